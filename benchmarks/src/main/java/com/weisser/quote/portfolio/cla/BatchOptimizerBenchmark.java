@@ -0,0 +1,64 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link BatchOptimizer} for a batch of independent problems, by number of
+ * threads. With enough cores the time per batch should fall roughly linearly with the threads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BatchOptimizerBenchmark {
+
+    @Param({"100"})
+    int numSecurities;
+
+    @Param({"64"})
+    int batchSize;
+
+    @Param({"1", "2", "4", "8"})
+    int threads;
+
+    private List<Problem> problems;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void createProblems() {
+        problems = new ArrayList<Problem>();
+        for (int i = 0; i < batchSize; i++) {
+            problems.add(new Problem(SyntheticUniverse.create(numSecurities, SolverFixture.SEED + i)));
+        }
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<BatchResult> optimizeAll() throws InterruptedException {
+        return new BatchOptimizer(pool, threads).optimizeAll(problems);
+    }
+}
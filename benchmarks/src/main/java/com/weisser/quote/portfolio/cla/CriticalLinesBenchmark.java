@@ -0,0 +1,132 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the critical line algorithm kernels. The simplex runs in the setup and is not
+ * measured.
+ */
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CriticalLinesBenchmark {
+
+    /**
+     * A problem right after {@link CriticalLines#setup}, recreated for every invocation. With more
+     * than one thread the large steps C11 and C12 run on a pool of their own.
+     */
+    @State(Scope.Thread)
+    public static class Frontier {
+        @Param({"10", "100", "1000", "5000"})
+        int numSecurities;
+
+        @Param({"1", "4"})
+        int threads;
+
+        SolverFixture fixture;
+        ForkJoinPool pool;
+
+        @Setup(Level.Trial)
+        public void createPool() {
+            pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        }
+
+        @TearDown(Level.Trial)
+        public void shutdown() {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void createProblem() {
+            fixture = new SolverFixture(numSecurities);
+            fixture.runSimplex();
+            fixture.criticalLines.setParallelism(pool, Optimizer.PARALLEL_THRESHOLD);
+            fixture.setupCriticalLines();
+        }
+    }
+
+    /**
+     * A problem at its first corner portfolio, with a security that is OUT at its lower limit.
+     */
+    @State(Scope.Thread)
+    public static class Corner {
+        @Param({"10", "100", "1000", "5000"})
+        int numSecurities;
+
+        SolverFixture fixture;
+
+        /**
+         * The security that is moved IN and OUT again.
+         */
+        int j;
+
+        @Setup(Level.Trial)
+        public void createProblem() {
+            fixture = new SolverFixture(numSecurities);
+            fixture.runSimplex();
+            fixture.setupCriticalLines();
+            fixture.nextCorner();
+
+            j = -1;
+            for (int j0 = 0; j0 < fixture.variableStates.getOutVarCount(); j0++) {
+                int var = fixture.variableStates.getOutVar(j0);
+                if (var < fixture.problem.getNumSecurities() && fixture.variableStates.isLo(var)) {
+                    j = var;
+                    break;
+                }
+            }
+            if (j < 0) {
+                throw new IllegalStateException("No security at its lower limit.");
+            }
+        }
+    }
+
+    /**
+     * Traces the efficient frontier: calls {@link CriticalLines#iteration} until the optimizer
+     * would stop.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public int iteration(Frontier frontier) {
+        SolverFixture fixture = frontier.fixture;
+        while (fixture.nextCorner()) {
+            // next corner portfolio
+        }
+        return fixture.clacount;
+    }
+
+    /**
+     * One {@link CriticalLines#addVariable} followed by the {@link CriticalLines#deleteVariable}
+     * that undoes it, so that the state stays the same between invocations.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public void addDeleteVariable(Corner corner) {
+        SolverFixture fixture = corner.fixture;
+        fixture.criticalLines.addVariable(fixture.variableStates, fixture.work, fixture.optimizerVars,
+                corner.j, Direction.Higher, fixture.clacount + 1);
+        fixture.criticalLines.deleteVariable(fixture.variableStates, fixture.work, fixture.optimizerVars,
+                corner.j, Direction.Lower, fixture.clacount + 1);
+    }
+}
@@ -0,0 +1,86 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link LinearAlgebraKernels} on a packed symmetric matrix of the size of Mi. Only "scalar"
+ * is available by default; for the Vector API kernels build with the profile <tt>vector</tt> and
+ * run with <tt>-p kernels=scalar,vector</tt>, see the README.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class KernelsBenchmark {
+
+    @Param({"scalar"})
+    String kernels;
+
+    @Param({"64", "512", "2048"})
+    int size;
+
+    private LinearAlgebraKernels k;
+    private double[] packed;
+    private double[] x1, x2, y1, y2;
+
+    @Setup(Level.Trial)
+    public void createMatrix() {
+        k = Kernels.byName(kernels);
+        if (k == null) {
+            throw new IllegalStateException("Kernels " + kernels + " are not available: " + Kernels.names());
+        }
+        Random random = new Random(SolverFixture.SEED);
+        packed = new double[SymmetricMatrix.rowOffset(size)];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = random.nextGaussian();
+        }
+        x1 = new double[size];
+        x2 = new double[size];
+        for (int i = 0; i < size; i++) {
+            x1[i] = random.nextGaussian();
+            x2[i] = random.nextGaussian();
+        }
+        y1 = new double[size];
+        y2 = new double[size];
+    }
+
+    /**
+     * alpha = Mi * bbar and beta = Mi * mu, as in step C11.
+     */
+    @Benchmark
+    public double[] symmetricMultiply() {
+        k.symmetricMultiply(packed, size, x1, y1, x2, y2);
+        return y1;
+    }
+
+    /**
+     * An update followed by the downdate that undoes it, as in steps C20 and C32.
+     */
+    @Benchmark
+    public double[] rankOneUpdate() {
+        k.symmetricRankOneUpdate(packed, size, x1, 3.0);
+        k.symmetricRankOneUpdate(packed, size, x1, -3.0);
+        return packed;
+    }
+
+    @Benchmark
+    public double dot() {
+        return k.dot(x1, 0, x2, 0, size);
+    }
+}
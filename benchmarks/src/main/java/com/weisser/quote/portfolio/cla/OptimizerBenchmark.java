@@ -0,0 +1,52 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end benchmark of {@link Optimizer#optimize()}: slack variables, both simplex phases and
+ * the critical line algorithm up to the configured number of corner portfolios. The covariance is
+ * either a dense matrix or the equivalent {@link FactorCovariance}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class OptimizerBenchmark {
+
+    @Param({"10", "100", "1000", "5000"})
+    int numSecurities;
+
+    @Param({"dense", "factor"})
+    String covariance;
+
+    private InputVariables inputVars;
+
+    /**
+     * The optimizer does not modify its input, so one problem serves all invocations. Building
+     * the {@link Problem} from it is part of the measured run.
+     */
+    @Setup(Level.Trial)
+    public void createProblem() {
+        inputVars = SyntheticUniverse.create(numSecurities, SolverFixture.SEED, "factor".equals(covariance));
+    }
+
+    @Benchmark
+    public EfficientFrontier optimize() {
+        return new Optimizer(inputVars).optimize();
+    }
+}
@@ -0,0 +1,45 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the simplex algorithm alone: phase 0 (find a feasible portfolio) and phase 1
+ * (maximize the expected return), which together give the starting point of the critical line
+ * algorithm.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SimplexBenchmark {
+
+    @Param({"10", "100", "1000", "5000"})
+    int numSecurities;
+
+    private SolverFixture fixture;
+
+    @Setup(Level.Invocation)
+    public void createProblem() {
+        fixture = new SolverFixture(numSecurities);
+    }
+
+    @Benchmark
+    public SimplexPhaseResult simplexPhases() {
+        return fixture.runSimplex();
+    }
+}
@@ -0,0 +1,73 @@
+package com.weisser.quote.portfolio.cla;
+
+/**
+ * The parts of one optimization run, wired together the same way {@link Optimizer#optimize()}
+ * does it, so that the benchmarks can drive the simplex and the critical line algorithm
+ * separately.
+ */
+final class SolverFixture {
+
+    /**
+     * Seed for the synthetic universes. Every benchmark solves the same problems.
+     */
+    static final long SEED = 20061308L;
+
+    final Problem problem;
+    final Output output;
+    final Workspace work;
+    final States variableStates;
+    final OptimizerVariables optimizerVars;
+    final CriticalLines criticalLines;
+
+    /**
+     * Number of the last corner portfolio computed.
+     */
+    int clacount;
+
+    /**
+     * Creates a synthetic universe, its {@link Problem} (which sets up the slack variables, step
+     * <M3>) and a workspace for one run.
+     *
+     * @param numSecurities The number of securities of the universe.
+     */
+    SolverFixture(int numSecurities) {
+        problem = new Problem(SyntheticUniverse.create(numSecurities, SEED));
+        output = new NullOutput();
+        work = new Workspace(problem, output);
+        variableStates = work.variableStates;
+        optimizerVars = work.optimizerVars;
+        criticalLines = work.criticalLines;
+    }
+
+    /**
+     * Runs both simplex phases (step <M5>).
+     *
+     * @return The result of the simplex algorithm.
+     */
+    SimplexPhaseResult runSimplex() {
+        SimplexPhaseResult rc = work.simplex.run(variableStates, work, optimizerVars);
+        if (rc != SimplexPhaseResult.OK) {
+            throw new IllegalStateException("Simplex failed: " + rc);
+        }
+        return rc;
+    }
+
+    /**
+     * Sets up the critical line algorithm (step <M7>). Must be called after {@link #runSimplex()}.
+     */
+    void setupCriticalLines() {
+        criticalLines.setup(variableStates, work, optimizerVars, output);
+        clacount = 0;
+    }
+
+    /**
+     * Computes the next corner portfolio (one pass of step <M8>).
+     *
+     * @return true if the optimizer would continue with another corner portfolio.
+     */
+    boolean nextCorner() {
+        clacount++;
+        criticalLines.iteration(variableStates, work, optimizerVars, clacount);
+        return optimizerVars.lambdaE >= problem.getEndLambdaE() && clacount < problem.getMaxCornerPortfolios();
+    }
+}
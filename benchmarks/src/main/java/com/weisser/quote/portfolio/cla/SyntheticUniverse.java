@@ -0,0 +1,134 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.util.Random;
+
+/**
+ * Synthetic optimization problems for the benchmarks.
+ *
+ * The covariance matrix is built from a three factor model plus specific risk, so it is positive
+ * definite for every universe size. Besides the budget constraint and the box constraints on each
+ * weight, the securities are assigned round robin to groups. Every group has an upper limit
+ * ("less than" constraint) and the first group additionally has a lower limit ("greater than"
+ * constraint).
+ *
+ * The covariance is either passed as a dense matrix or as a {@link FactorCovariance} with the same
+ * elements.
+ */
+final class SyntheticUniverse {
+
+    /**
+     * Number of risk factors of the covariance model.
+     */
+    static final int NUM_FACTORS = 3;
+
+    private SyntheticUniverse() {
+    }
+
+    /**
+     * Returns the number of groups used for a universe of the given size.
+     *
+     * @param numSecurities The number of securities.
+     * @return The number of groups (between 2 and 20).
+     */
+    static int numGroups(int numSecurities) {
+        return Math.max(2, Math.min(20, numSecurities / 10));
+    }
+
+    /**
+     * Creates the input variables for a universe of the given size. The same size and seed always
+     * give the same problem.
+     *
+     * @param numSecurities The number of securities.
+     * @param seed Seed of the random number generator.
+     * @return The filled input variables.
+     */
+    static InputVariables create(int numSecurities, long seed) {
+        return create(numSecurities, seed, false);
+    }
+
+    /**
+     * Creates the input variables for a universe of the given size. The same size and seed always
+     * give the same problem, whether the covariance is dense or a factor model.
+     *
+     * @param numSecurities The number of securities.
+     * @param seed Seed of the random number generator.
+     * @param factorModel True to set the covariance as a {@link FactorCovariance}.
+     * @return The filled input variables.
+     */
+    static InputVariables create(int numSecurities, long seed, boolean factorModel) {
+        Random random = new Random(seed);
+        int n = numSecurities;
+        int numGroups = numGroups(n);
+
+        // budget, group caps, group floor
+        char[] conTypes = new char[numGroups + 2];
+        conTypes[0] = '=';
+        for (int g = 0; g < numGroups; g++) {
+            conTypes[1 + g] = '<';
+        }
+        conTypes[numGroups + 1] = '>';
+
+        InputVariables inputVars = new InputVariables();
+        inputVars.init(n, conTypes);
+
+        double[][] lhs = new double[conTypes.length][n];
+        double[] rhs = new double[conTypes.length];
+
+        for (int j = 0; j < n; j++) {
+            lhs[0][j] = 1.0;
+            lhs[1 + j % numGroups][j] = 1.0;
+            if (j % numGroups == 0) {
+                lhs[numGroups + 1][j] = 1.0;
+            }
+        }
+        rhs[0] = 1.0;
+        for (int g = 0; g < numGroups; g++) {
+            rhs[1 + g] = 2.0 / numGroups;
+        }
+        rhs[numGroups + 1] = 0.5 / numGroups;
+        inputVars.setConstraints(lhs, rhs);
+
+        double[] lower = new double[n];
+        double[] upper = new double[n];
+        double[] mu = new double[n];
+        double[][] beta = new double[n][NUM_FACTORS];
+        double[] specific = new double[n];
+
+        for (int j = 0; j < n; j++) {
+            upper[j] = Math.min(1.0, 5.0 / n);
+            for (int f = 0; f < NUM_FACTORS; f++) {
+                beta[j][f] = 0.3 * random.nextGaussian();
+            }
+            specific[j] = 0.01 + 0.04 * random.nextDouble();
+            mu[j] = 0.02 + 0.1 * random.nextDouble() + 0.05 * Math.abs(beta[j][0]);
+        }
+        inputVars.setLowerBoundaries(lower);
+        inputVars.setUpperBoundaries(upper);
+        inputVars.setExpectedReturns(mu);
+
+        if (factorModel) {
+            double[][] identity = new double[NUM_FACTORS][NUM_FACTORS];
+            for (int f = 0; f < NUM_FACTORS; f++) {
+                identity[f][f] = 1.0;
+            }
+            inputVars.setCovariance(new FactorCovariance(beta, identity, specific));
+            return inputVars;
+        }
+
+        // Lower triangle of B * B' + D, row by row.
+        double[] covariance = new double[n * (n + 1) / 2];
+        int idx = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j <= i; j++) {
+                double sum = (i == j) ? specific[i] : 0.0;
+                for (int f = 0; f < NUM_FACTORS; f++) {
+                    sum += beta[i][f] * beta[j][f];
+                }
+                covariance[idx++] = sum;
+            }
+        }
+        inputVars.setCovariance(covariance);
+
+        return inputVars;
+    }
+}
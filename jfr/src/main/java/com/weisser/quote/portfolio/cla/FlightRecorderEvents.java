@@ -0,0 +1,134 @@
+package com.weisser.quote.portfolio.cla;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * {@link SolverEvents} as Java Flight Recorder events: one per simplex pivot, one per corner
+ * portfolio and one per run. They are recorded with the standard tools, e.g.
+ * <pre>
+ *     java -XX:StartFlightRecording=filename=solve.jfr ...
+ *     jfr print --categories Portfolio solve.jfr
+ * </pre>
+ * While no recording is running, an event costs a check of {@link Event#isEnabled()}; the event
+ * objects are not allocated after escape analysis.
+ */
+public final class FlightRecorderEvents implements SolverEvents {
+
+    @Override
+    public void pivot(SimplexPhase phase, int entering, int leaving, double theta) {
+        PivotEvent event = new PivotEvent();
+        if (event.isEnabled()) {
+            event.phase = phase.name();
+            event.entering = entering;
+            event.leaving = leaving;
+            event.theta = theta;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void corner(int clacount, double lambdaE, int variable, boolean added, Direction direction, int numIn) {
+        CornerEvent event = new CornerEvent();
+        if (event.isEnabled()) {
+            event.clacount = clacount;
+            event.lambdaE = lambdaE;
+            event.variable = variable;
+            event.added = added;
+            event.direction = direction != null ? direction.name() : null;
+            event.numIn = numIn;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginSolve() {
+        SolveEvent event = new SolveEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endSolve(Object solve, Problem problem, EfficientFrontier frontier) {
+        if (solve == null) {
+            return;
+        }
+        SolveEvent event = (SolveEvent) solve;
+        event.end();
+        if (event.shouldCommit()) {
+            event.numVariables = problem.getNumVariables();
+            event.numConstraints = problem.getNumConstraints();
+            event.result = frontier.getSimplexResult().name();
+            event.corners = frontier.size();
+            event.commit();
+        }
+    }
+
+    @Name("com.weisser.quote.portfolio.cla.SimplexPivot")
+    @Label("Simplex Pivot")
+    @Category({"Portfolio", "Critical Line Algorithm"})
+    @StackTrace(false)
+    static final class PivotEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Entering Variable")
+        int entering;
+
+        @Label("Leaving Variable")
+        @Description("The entering variable if it only moved to its other limit")
+        int leaving;
+
+        @Label("Theta")
+        double theta;
+    }
+
+    @Name("com.weisser.quote.portfolio.cla.Corner")
+    @Label("Corner Portfolio")
+    @Category({"Portfolio", "Critical Line Algorithm"})
+    @StackTrace(false)
+    static final class CornerEvent extends Event {
+        @Label("Corner")
+        int clacount;
+
+        @Label("Lambda E")
+        double lambdaE;
+
+        @Label("Variable")
+        @Description("The variable added or deleted, -1 for the first corner")
+        int variable;
+
+        @Label("Added")
+        boolean added;
+
+        @Label("Direction")
+        String direction;
+
+        @Label("IN Variables")
+        int numIn;
+    }
+
+    @Name("com.weisser.quote.portfolio.cla.Solve")
+    @Label("Optimizer Run")
+    @Category({"Portfolio", "Critical Line Algorithm"})
+    static final class SolveEvent extends Event {
+        @Label("Variables")
+        int numVariables;
+
+        @Label("Constraints")
+        int numConstraints;
+
+        @Label("Simplex Result")
+        String result;
+
+        @Label("Corner Portfolios")
+        int corners;
+    }
+}
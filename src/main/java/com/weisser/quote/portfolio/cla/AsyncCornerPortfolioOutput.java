@@ -0,0 +1,293 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Corner portfolio output on a background thread. Each call copies the corner portfolio into a
+ * preallocated slot of a ring buffer and returns; a writer thread passes the slots in order to
+ * another {@link CornerPortfolioOuput}, e.g. a {@link CornerPortfolioConsoleOutput}, so the
+ * formatting and the I/O no longer run on the thread of {@link Optimizer#optimize()}.
+ *
+ * The ring has one producer, the optimizer thread, and one consumer, the writer thread. The
+ * optimizer only waits if all slots are full (back-pressure), which {@link #getStallCount()}
+ * reports; give the ring enough slots for the bursts of corner portfolios. The slots are
+ * allocated for the first problem and reused, so a run allocates nothing. Use one instance per
+ * optimizer thread, and {@link #close()} it to write the rest and stop the writer thread.
+ */
+public class AsyncCornerPortfolioOutput implements CornerPortfolioOuput, AutoCloseable {
+
+    /**
+     * Default number of slots.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Value of {@link Slot#clacount} for a call of {@link #init()}.
+     */
+    private static final int INIT = -1;
+
+    private final CornerPortfolioOuput delegate;
+    private final Slot[] slots;
+    private final int mask;
+    private final Thread writer;
+
+    /**
+     * Number of slots published by the optimizer and number of slots written, both counting
+     * from the start. The slot of sequence s is slots[s &amp; mask].
+     */
+    private final AtomicLong published = new AtomicLong(), written = new AtomicLong();
+
+    /**
+     * Set by the writer before it parks, so that the optimizer only unparks it when needed.
+     */
+    private volatile boolean writerParked;
+
+    /**
+     * The optimizer thread while it waits in {@link #next()} or {@link #flush()}.
+     */
+    private volatile Thread waiting;
+
+    private volatile boolean closed;
+    /**
+     * The first exception or error thrown by the delegate. The writer thread stops then.
+     */
+    private volatile Throwable failure;
+
+    private long stalls;
+
+    /**
+     * Creates an output with {@link #DEFAULT_CAPACITY} slots.
+     *
+     * @param delegate The output that formats and writes the corner portfolios.
+     */
+    public AsyncCornerPortfolioOutput(CornerPortfolioOuput delegate) {
+        this(delegate, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an output and starts its writer thread (a daemon thread).
+     *
+     * @param delegate The output that formats and writes the corner portfolios. It is only called
+     *        from the writer thread.
+     * @param capacity The number of slots, rounded up to a power of 2.
+     */
+    public AsyncCornerPortfolioOutput(CornerPortfolioOuput delegate, int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be in 1 .. 2^30: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.delegate = delegate;
+        this.slots = new Slot[size];
+        this.mask = size - 1;
+        for (int s = 0; s < size; s++) {
+            slots[s] = new Slot();
+        }
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "cla-corner-output");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues the call of {@link CornerPortfolioOuput#init()}.
+     */
+    @Override
+    public void init() {
+        Slot slot = next();
+        slot.problem = null;
+        slot.clacount = INIT;
+        publish();
+    }
+
+    /**
+     * Copies the corner portfolio into the next slot.
+     */
+    @Override
+    public void cornerPortfolio(Problem problem, OptimizerVariables optimizerVars, int clacount) {
+        Slot slot = next();
+        int n = problem.getNumVariables();
+
+        if (slot.vars == null || slot.vars.portfolioWeights.length < n) {
+            slot.vars = new OptimizerVariables(n, 0);
+        }
+        System.arraycopy(optimizerVars.portfolioWeights, 0, slot.vars.portfolioWeights, 0, n);
+        slot.vars.portfolioExpectedReturn = optimizerVars.portfolioExpectedReturn;
+        slot.vars.portfolioVariance = optimizerVars.portfolioVariance;
+        slot.vars.lambdaE = optimizerVars.lambdaE;
+        slot.vars.a0 = optimizerVars.a0;
+        slot.vars.a1 = optimizerVars.a1;
+        slot.vars.a2 = optimizerVars.a2;
+        slot.problem = problem;
+        slot.clacount = clacount;
+        publish();
+    }
+
+    /**
+     * Waits until the writer thread has passed all queued corner portfolios to the delegate.
+     *
+     * @throws RuntimeException The first exception thrown by the delegate, if any. An error of
+     *         the delegate is thrown as the cause of an IllegalStateException.
+     * @throws IllegalStateException If the writer thread died before all corner portfolios were
+     *         written.
+     */
+    public void flush() {
+        long target = published.get();
+        waiting = Thread.currentThread();
+        try {
+            while (written.get() < target && failure == null && writer.isAlive()) {
+                LockSupport.parkNanos(this, 1000000L);
+            }
+        } finally {
+            waiting = null;
+        }
+        checkFailure();
+        if (written.get() < target) {
+            throw new IllegalStateException("AsyncCornerPortfolioOutput: writer thread died, "
+                    + (target - written.get()) + " calls not written");
+        }
+    }
+
+    /**
+     * Writes the queued corner portfolios and stops the writer thread.
+     *
+     * @throws RuntimeException The first exception thrown by the delegate, if any, see
+     *         {@link #flush()}.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            LockSupport.unpark(writer);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns how often the optimizer had to wait for a free slot.
+     *
+     * @return The number of calls that found the ring full.
+     */
+    public long getStallCount() {
+        return stalls;
+    }
+
+    /**
+     * Returns the next free slot, waiting for the writer thread if the ring is full.
+     */
+    private Slot next() {
+        if (closed) {
+            throw new IllegalStateException("AsyncCornerPortfolioOutput: closed");
+        }
+        checkFailure();
+        long sequence = published.get();
+        if (sequence - written.get() > mask) {
+            stalls++;
+            waiting = Thread.currentThread();
+            try {
+                while (sequence - written.get() > mask) {
+                    checkFailure();
+                    if (!writer.isAlive()) {
+                        throw new IllegalStateException("AsyncCornerPortfolioOutput: writer thread died");
+                    }
+                    LockSupport.parkNanos(this, 100000L);
+                }
+            } finally {
+                waiting = null;
+            }
+        }
+        return slots[(int) sequence & mask];
+    }
+
+    /**
+     * Throws the failure of the delegate, if any.
+     */
+    private void checkFailure() {
+        Throwable f = failure;
+        if (f instanceof RuntimeException) {
+            throw (RuntimeException) f;
+        } else if (f != null) {
+            throw new IllegalStateException("AsyncCornerPortfolioOutput: writer thread failed", f);
+        }
+    }
+
+    /**
+     * Hands the slot filled after {@link #next()} to the writer thread.
+     */
+    private void publish() {
+        published.set(published.get() + 1);
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * The writer thread: passes the slots to the delegate until the output is closed.
+     */
+    private void write() {
+        long sequence = 0;
+
+        while (true) {
+            if (sequence == published.get()) {
+                if (closed) {
+                    return;
+                }
+                writerParked = true;
+                if (sequence == published.get() && !closed) {
+                    LockSupport.park(this);
+                }
+                writerParked = false;
+                continue;
+            }
+
+            Slot slot = slots[(int) sequence & mask];
+            try {
+                if (slot.clacount == INIT) {
+                    delegate.init();
+                } else {
+                    delegate.cornerPortfolio(slot.problem, slot.vars, slot.clacount);
+                }
+            } catch (Throwable e) {
+                failure = e;
+                Thread t = waiting;
+                if (t != null) {
+                    LockSupport.unpark(t);
+                }
+                return;
+            }
+            sequence++;
+            written.set(sequence);
+
+            Thread t = waiting;
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
+        }
+    }
+
+    /**
+     * A copy of the corner portfolio of one call.
+     */
+    private static final class Slot {
+        Problem problem;
+        OptimizerVariables vars;
+        int clacount;
+    }
+}
@@ -0,0 +1,278 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.util.Arrays;
+
+/**
+ * LU factorisation of the simplex basis A(ALL,IN), the columns of A of the m basic variables.
+ *
+ * Each basic variable has a position 0..m-1, and a variable coming IN takes the position of the
+ * variable going OUT, so a pivot changes one column and nothing is reordered. The basis is
+ * factorised as P * B = L * U with partial pivoting; a pivot appends an eta vector (product form
+ * of the inverse), and after {@link #REFACTOR_INTERVAL} pivots the basis is factorised again
+ * from its columns.
+ *
+ * FTRAN (solve B * x = a) and BTRAN (solve B' * y = c) skip zero entries, which makes them
+ * cheap for the sparse columns of budget, group and slack constraints.
+ */
+final class BasisFactorization {
+
+    /**
+     * Number of eta vectors after which the basis is factorised again.
+     */
+    static final int REFACTOR_INTERVAL = 50;
+
+    private final int m;
+
+    /**
+     * L (unit diagonal, below the diagonal) and U (diagonal and above), column-major: element
+     * (i, k) is at k * m + i. spare receives the next factorisation.
+     */
+    private double[] lu, spare;
+
+    /**
+     * Row i of L * U is row perm[i] of B.
+     */
+    private int[] perm, sparePerm;
+
+    /**
+     * The variable at each position.
+     */
+    private final int[] basisVar;
+
+    /**
+     * The position of each variable, -1 if it is not basic.
+     */
+    private final int[] position;
+
+    /**
+     * Eta vectors of the pivots since the last factorisation: etas[e] = B^-1 * a(j) for the
+     * variable j that took position etaPos[e].
+     */
+    private double[][] etas;
+    private int[] etaPos;
+    private int numEtas;
+
+    private final double[] scratch;
+
+    /**
+     * @param m            Number of constraints, the size of the basis.
+     * @param numVariables Number of variables including the ABVs.
+     */
+    BasisFactorization(int m, int numVariables) {
+        this.m = m;
+        lu = new double[m * m];
+        spare = new double[m * m];
+        perm = new int[m];
+        sparePerm = new int[m];
+        basisVar = new int[m];
+        position = new int[numVariables];
+        Arrays.fill(position, -1);
+        etas = new double[REFACTOR_INTERVAL][];
+        etaPos = new int[REFACTOR_INTERVAL];
+        scratch = new double[m];
+    }
+
+    /**
+     * @param p A position.
+     * @return The variable at position p.
+     */
+    int variable(int p) {
+        return basisVar[p];
+    }
+
+    /**
+     * @param j A variable.
+     * @return The position of variable j, -1 if it is not basic.
+     */
+    int position(int j) {
+        return position[j];
+    }
+
+    /**
+     * Factorises the basis of the given variables.
+     *
+     * @param vars The variable at each position.
+     * @return False if the basis is singular.
+     */
+    boolean factorize(Workspace work, int[] vars) {
+        for (int p = 0; p < m; p++) {
+            if (basisVar[p] < position.length && position[basisVar[p]] == p) {
+                position[basisVar[p]] = -1;
+            }
+        }
+        for (int p = 0; p < m; p++) {
+            basisVar[p] = vars[p];
+            position[vars[p]] = p;
+        }
+        numEtas = 0;
+        return refactorize(work);
+    }
+
+    /**
+     * Variable j takes position p.
+     *
+     * @param column B^-1 * a(j) for the current basis, see {@link #ftran(double[])}.
+     */
+    void replace(Workspace work, int p, int j, double[] column) {
+        position[basisVar[p]] = -1;
+        basisVar[p] = j;
+        position[j] = p;
+
+        if (numEtas >= REFACTOR_INTERVAL && refactorize(work)) {
+            return;
+        }
+        if (numEtas == etas.length) {
+            // The new basis is nonsingular since column[p] is the pivot of the ratio test, but
+            // too ill-conditioned for a fresh factorisation: keep the eta file.
+            etas = Arrays.copyOf(etas, 2 * numEtas);
+            etaPos = Arrays.copyOf(etaPos, 2 * numEtas);
+        }
+        if (etas[numEtas] == null) {
+            etas[numEtas] = new double[m];
+        }
+        System.arraycopy(column, 0, etas[numEtas], 0, m);
+        etaPos[numEtas] = p;
+        numEtas++;
+    }
+
+    /**
+     * Solves B * x = a in place.
+     *
+     * @param x a on entry, x on return (indexed by position).
+     */
+    void ftran(double[] x) {
+        LinearAlgebraKernels kernels = Kernels.get();
+        double[] t = scratch;
+        int i, k;
+
+        for (i = 0; i < m; i++) {
+            t[i] = x[perm[i]];
+        }
+        for (k = 0; k < m - 1; k++) {
+            if (t[k] != 0) {
+                kernels.axpy(-t[k], lu, k * m + k + 1, t, k + 1, m - k - 1);
+            }
+        }
+        for (k = m - 1; k >= 0; k--) {
+            if (t[k] != 0) {
+                t[k] /= lu[k * m + k];
+                kernels.axpy(-t[k], lu, k * m, t, 0, k);
+            }
+        }
+        System.arraycopy(t, 0, x, 0, m);
+
+        for (int e = 0; e < numEtas; e++) {
+            int p = etaPos[e];
+            double[] d = etas[e];
+            if (x[p] != 0) {
+                double xp = x[p] / d[p];
+                kernels.axpy(-xp, d, 0, x, 0, m);
+                x[p] = xp;
+            }
+        }
+    }
+
+    /**
+     * Solves B' * y = c in place.
+     *
+     * @param y c on entry (indexed by position), y on return.
+     */
+    void btran(double[] y) {
+        LinearAlgebraKernels kernels = Kernels.get();
+        double[] t = scratch;
+        int i, k;
+
+        for (int e = numEtas - 1; e >= 0; e--) {
+            int p = etaPos[e];
+            double[] d = etas[e];
+            double s = kernels.dot(d, 0, y, 0, m) - d[p] * y[p];
+            y[p] = (y[p] - s) / d[p];
+        }
+
+        for (k = 0; k < m; k++) {
+            t[k] = (y[k] - kernels.dot(lu, k * m, t, 0, k)) / lu[k * m + k];
+        }
+        for (k = m - 2; k >= 0; k--) {
+            t[k] -= kernels.dot(lu, k * m + k + 1, t, k + 1, m - k - 1);
+        }
+        for (i = 0; i < m; i++) {
+            y[perm[i]] = t[i];
+        }
+    }
+
+    /**
+     * Writes B^-1 into ai with the rows in the order of the IN set, as the critical line
+     * algorithm expects it.
+     */
+    void inverse(States variableStates, Matrix ai) {
+        double[] data = ai.data();
+        double[] column = new double[m];
+
+        for (int i = 0; i < m; i++) {
+            Arrays.fill(column, 0);
+            column[i] = 1;
+            ftran(column);
+            for (int p = 0; p < m; p++) {
+                data[variableStates.getInVarPosition(basisVar[p]) * m + i] = column[p];
+            }
+        }
+    }
+
+    /**
+     * Factorises the current basis into spare and swaps it in if it is not singular.
+     */
+    private boolean refactorize(Workspace work) {
+        LinearAlgebraKernels kernels = Kernels.get();
+        double[] a = spare;
+        int[] pv = sparePerm;
+        int i, k, c;
+
+        for (k = 0; k < m; k++) {
+            work.getConstraintColumn(basisVar[k], a, k * m);
+        }
+        for (i = 0; i < m; i++) {
+            pv[i] = i;
+        }
+
+        for (k = 0; k < m; k++) {
+            int col = k * m;
+            int pivot = k;
+            for (i = k + 1; i < m; i++) {
+                if (Math.abs(a[col + i]) > Math.abs(a[col + pivot])) {
+                    pivot = i;
+                }
+            }
+            if (Math.abs(a[col + pivot]) < Optimizer.EPSILON) {
+                return false;
+            }
+            if (pivot != k) {
+                for (c = 0; c < m; c++) {
+                    double t = a[c * m + k];
+                    a[c * m + k] = a[c * m + pivot];
+                    a[c * m + pivot] = t;
+                }
+                int t = pv[k];
+                pv[k] = pv[pivot];
+                pv[pivot] = t;
+            }
+
+            double d = a[col + k];
+            for (i = k + 1; i < m; i++) {
+                a[col + i] /= d;
+            }
+            for (c = k + 1; c < m; c++) {
+                double f = a[c * m + k];
+                if (f != 0) {
+                    kernels.axpy(-f, a, col + k + 1, a, c * m + k + 1, m - k - 1);
+                }
+            }
+        }
+
+        spare = lu;
+        lu = a;
+        sparePerm = perm;
+        perm = pv;
+        numEtas = 0;
+        return true;
+    }
+}
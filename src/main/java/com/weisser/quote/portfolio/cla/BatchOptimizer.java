@@ -0,0 +1,98 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Solves many independent problems in parallel.
+ *
+ * Every problem is solved by its own {@link Optimizer} in its own {@link Workspace}, without
+ * debug or corner portfolio output, so the runs share no mutable state. The executor can be any
+ * executor, e.g. a {@link java.util.concurrent.ForkJoinPool} sized to the number of cores, or a
+ * virtual thread executor on Java 21 and later. At most maxConcurrency problems are in progress
+ * at the same time, which also bounds the memory held by the workspaces. The problems themselves
+ * are solved sequentially (see {@link Optimizer#setParallelism}), so the batch does not nest a
+ * second level of parallelism on the common pool inside the executor.
+ */
+public class BatchOptimizer {
+    private final Executor executor;
+    private final int maxConcurrency;
+
+    /**
+     * Creates a batch optimizer.
+     *
+     * @param executor Runs the optimizations. It is not shut down by the batch optimizer.
+     * @param maxConcurrency The maximum number of problems in progress at the same time.
+     */
+    public BatchOptimizer(Executor executor, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1: " + maxConcurrency);
+        }
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Solves all problems and waits until every one is finished. A problem that fails does not
+     * affect the others; its result holds the failure instead.
+     *
+     * @param problems The problems to solve.
+     * @return One result per problem, in the iteration order of problems.
+     * @throws InterruptedException If the calling thread is interrupted while waiting. Problems
+     *         already submitted keep running.
+     */
+    public List<BatchResult> optimizeAll(Collection<Problem> problems) throws InterruptedException {
+        List<Problem> list = new ArrayList<Problem>(problems);
+        final BatchResult[] results = new BatchResult[list.size()];
+        final Semaphore permits = new Semaphore(maxConcurrency);
+        final CountDownLatch done = new CountDownLatch(list.size());
+
+        for (int i = 0; i < list.size(); i++) {
+            final int index = i;
+            final Problem problem = list.get(i);
+
+            permits.acquire();
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            results[index] = optimize(index, problem);
+                        } finally {
+                            permits.release();
+                            done.countDown();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                results[index] = new BatchResult(index, problem, null, e);
+                permits.release();
+                done.countDown();
+            }
+        }
+
+        done.await();
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Solves one problem, on the calling thread only. Errors such as an OutOfMemoryError are
+     * recorded like exceptions, so every problem gets its result.
+     */
+    private static BatchResult optimize(int index, Problem problem) {
+        try {
+            Optimizer optimizer = new Optimizer(problem);
+            optimizer.setParallelism(null, 0);
+            EfficientFrontier frontier = optimizer.optimize();
+            return new BatchResult(index, problem, frontier, null);
+        } catch (Throwable e) {
+            return new BatchResult(index, problem, null, e);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.weisser.quote.portfolio.cla;
+
+/**
+ * The outcome of one problem of a {@link BatchOptimizer} run: either the efficient frontier or
+ * the reason why the problem could not be solved.
+ */
+public final class BatchResult {
+    private final int index;
+    private final Problem problem;
+    private final EfficientFrontier frontier;
+    private final Throwable failure;
+
+    BatchResult(int index, Problem problem, EfficientFrontier frontier, Throwable failure) {
+        this.index = index;
+        this.problem = problem;
+        this.frontier = frontier;
+        this.failure = failure;
+    }
+
+    /**
+     * Returns the position of the problem in the batch.
+     *
+     * @return The index, starting with 0.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public Problem getProblem() {
+        return problem;
+    }
+
+    /**
+     * Returns true if the frontier was computed. A problem that the simplex finds infeasible or
+     * unbounded has an empty frontier and is not a success.
+     *
+     * @return True if the frontier was computed.
+     */
+    public boolean isSuccess() {
+        return failure == null && frontier.getSimplexResult() == SimplexPhaseResult.OK;
+    }
+
+    /**
+     * Returns the efficient frontier.
+     *
+     * @return The frontier, or null if the optimizer threw an exception.
+     */
+    public EfficientFrontier getFrontier() {
+        return frontier;
+    }
+
+    /**
+     * Returns the exception thrown by the optimizer.
+     *
+     * @return The exception, or null if the optimizer finished.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+}
@@ -1,8 +1,14 @@
 package com.weisser.quote.portfolio.cla;
 
+import java.util.Arrays;
+
 /**
  * CSet is a set that keeps its elements in sorted order.
  *
+ * The order is part of the algorithm: the rows of Ai follow the positions of the IN variables
+ * and the lambdas are the last IN variables. Lookups are binary searches; add and delete find
+ * the position the same way and shift the tail with one array copy.
+ *
  * TODO Migrate to a standard JDK Collections interface like SortedSet<Integer>
  * TODO Errors, when optimizing a problem with only one security.
  */
@@ -43,6 +49,25 @@ public class CSet {
         return items[index];
     }
 
+    /**
+     * Returns the array holding the elements in sorted order, for loops that walk the set.
+     * Only the first {@link #count()} entries are elements. The array must not be modified and
+     * is replaced by {@link #resize(int)}.
+     *
+     * @return The elements.
+     */
+    public int[] members() {
+        return items;
+    }
+
+    /**
+     * @param item The element to look for.
+     * @return True if item is in the set.
+     */
+    public boolean contains(int item) {
+        return Arrays.binarySearch(items, 0, count, item) >= 0;
+    }
+
     public void deleteAt(int index) {
         count--;
         if (count - index >= 0) System.arraycopy(items, index + 1, items, index, count - index);
@@ -52,15 +77,11 @@ public class CSet {
      * Inserts the item into the set while keeping the order intact.
      */
     public void add(int newitem) {
-        int i;
-        for (i = count; i >= 1; i--) {
-            if (newitem > items[i - 1]) {
-                break;
-            } else {
-                items[i] = items[i - 1];
-            }
+        int i = Arrays.binarySearch(items, 0, count, newitem);
+        if (i < 0) {
+            i = -i - 1;
         }
-        // System.out.println("Set("+i+") to "+ member);
+        System.arraycopy(items, i, items, i + 1, count - i);
         items[i] = newitem;
         count++;
     }
@@ -82,17 +103,14 @@ public class CSet {
      * @return the position in the array.
      */
     public int position(int item) {
-        int i;
+        int i = Arrays.binarySearch(items, 0, count, item);
 
-        for (i = 0; i < count; i++) {
-            if (items[i] == item) {
-                return i;
-            }
+        if (i < 0) {
+            // Should not happen...
+            System.err.println("Unhandled error: CSet.position() - element not found.");
+            return count;  // Better return -1 ?;
         }
-
-        // Should not happen...
-        System.err.println("Unhandled error: CSet.position() - element not found.");
-        return i;  // Better return -1 ?;
+        return i;
     }
 
     /**
@@ -1,20 +1,41 @@
 package com.weisser.quote.portfolio.cla;
 
-import java.text.DecimalFormat;
+import com.weisser.quote.util.DecimalFormatter;
+
+import java.io.PrintStream;
 
 /**
- * Output corner portfolios to stdout.
+ * Output corner portfolios to stdout. To collect the corner portfolios, use the
+ * {@link EfficientFrontier} returned by {@link Optimizer#optimize()}.
  *
- * TODO Collect corner portfolios in a collection.
+ * Each corner portfolio is formatted into a reused buffer and printed with one call. To keep
+ * the printing off the optimizer thread, wrap the output in an {@link AsyncCornerPortfolioOutput}.
  *
  * @author Stefan Weisser
  */
 public class CornerPortfolioConsoleOutput implements CornerPortfolioOuput {
 
+    private final PrintStream out;
+
+    /**
+     * The line of the current corner portfolio.
+     */
+    private final StringBuilder line = new StringBuilder(256);
+
     /**
      * Creates a new output object.
      */
     public CornerPortfolioConsoleOutput() {
+        this(System.out);
+    }
+
+    /**
+     * Creates an output object that prints to the given stream instead of stdout.
+     *
+     * @param out The stream.
+     */
+    public CornerPortfolioConsoleOutput(PrintStream out) {
+        this.out = out;
     }
 
     /**
@@ -23,42 +44,41 @@ public class CornerPortfolioConsoleOutput implements CornerPortfolioOuput {
      */
     @Override
     public void init() {
-        System.out.println("CP Num  E        SD       LambdaE                a0                a1                a2  weights");
+        out.println("CP Num  E        SD       LambdaE                a0                a1                a2  weights");
     }
 
     /**
      * Output one segment of the corner portfolio. See
-     * com.weisser.portfolio.todd.CornerPortfolioOuput#cornerPortfolio(com.weisser.portfolio.todd.InputVariables,
+     * com.weisser.portfolio.todd.CornerPortfolioOuput#cornerPortfolio(com.weisser.portfolio.todd.Problem,
      * com.weisser.portfolio.todd.OptimizerVariables)
      *
-     * @param inputVars Input variables.
+     * @param problem The problem.
      * @param optimizerVars Optimizer variables.
      */
     @Override
-    public void cornerPortfolio(InputVariables inputVars, OptimizerVariables optimizerVars, int clacount) {
-        DecimalFormat f1 = new DecimalFormat("#0.00000");
-        DecimalFormat f3 = new DecimalFormat("#0.000"); // for the weights
-        DecimalFormat f4 = new DecimalFormat("#000"); // for the clacount
+    public void cornerPortfolio(Problem problem, OptimizerVariables optimizerVars, int clacount) {
+        StringBuilder sb = line;
+        sb.setLength(0);
 
-        System.out.print(f4.format(clacount) + "     ");
-        System.out.print(f1.format(optimizerVars.portfolioExpectedReturn) + "  ");
-        System.out.print(f1.format(Math.sqrt(optimizerVars.portfolioVariance)) + "  ");
-        System.out.print(f1.format(optimizerVars.lambdaE) + "  ");
+        DecimalFormatter.appendInteger(sb, clacount, 3).append("     ");
+        DecimalFormatter.appendFixed(sb, optimizerVars.portfolioExpectedReturn, 5).append("  ");
+        DecimalFormatter.appendFixed(sb, Math.sqrt(optimizerVars.portfolioVariance), 5).append("  ");
+        DecimalFormatter.appendFixed(sb, optimizerVars.lambdaE, 5).append("  ");
 
         if (optimizerVars.a0 != Optimizer.INVALID) {
-            System.out.print(String.format("%1$16.8f", optimizerVars.a0) + "  ");
-            System.out.print(String.format("%1$16.8f", optimizerVars.a1) + "  ");
-            System.out.print(String.format("%1$16.8f", optimizerVars.a2) + "  ");
+            DecimalFormatter.appendFixed(sb, optimizerVars.a0, 8, 16).append("  ");
+            DecimalFormatter.appendFixed(sb, optimizerVars.a1, 8, 16).append("  ");
+            DecimalFormatter.appendFixed(sb, optimizerVars.a2, 8, 16).append("  ");
         } else {
-            System.out.print("               -  ");
-            System.out.print("               -  ");
-            System.out.print("               -  ");
+            sb.append("               -  ");
+            sb.append("               -  ");
+            sb.append("               -  ");
         }
 
-        for (int j = 0; j < inputVars.getNumSecurities(); j++) {
-            System.out.print(f3.format(optimizerVars.portfolioWeights[j]) + "  ");
+        for (int j = 0; j < problem.getNumSecurities(); j++) {
+            DecimalFormatter.appendFixed(sb, optimizerVars.portfolioWeights[j], 3).append("  ");
         }
 
-        System.out.println();
+        out.println(sb);
     }
 }
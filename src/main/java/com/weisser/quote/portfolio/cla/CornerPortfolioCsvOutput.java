@@ -0,0 +1,94 @@
+package com.weisser.quote.portfolio.cla;
+
+import com.weisser.quote.util.CsvWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes corner portfolios as CSV records: corner, E, SD, lambdaE, a0, a1, a2 and the weights,
+ * after a header record. a0 .. a2 are empty where they are not defined. The records can be
+ * written while the optimizer runs (as its {@link CornerPortfolioOuput}) or afterwards from an
+ * {@link EfficientFrontier}, see {@link #write(EfficientFrontier)}.
+ *
+ * Formatting does not allocate; the {@link CsvWriter} is flushed by the caller.
+ */
+public class CornerPortfolioCsvOutput implements CornerPortfolioOuput {
+    private final CsvWriter out;
+    private final int numSecurities;
+
+    /**
+     * Creates an output.
+     *
+     * @param out The writer, e.g. with a fixed number of decimals.
+     * @param numSecurities The number of securities, for the header.
+     */
+    public CornerPortfolioCsvOutput(CsvWriter out, int numSecurities) {
+        this.out = out;
+        this.numSecurities = numSecurities;
+    }
+
+    /**
+     * Writes the header record.
+     *
+     * @throws UncheckedIOException If the writer fails.
+     */
+    @Override
+    public void init() {
+        try {
+            out.field("corner").field("E").field("SD").field("lambdaE").field("a0").field("a1").field("a2");
+            for (int j = 0; j < numSecurities; j++) {
+                out.field("w" + j);
+            }
+            out.endRecord();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes one corner portfolio.
+     *
+     * @throws UncheckedIOException If the writer fails.
+     */
+    @Override
+    public void cornerPortfolio(Problem problem, OptimizerVariables optimizerVars, int clacount) {
+        try {
+            record(clacount, optimizerVars.portfolioExpectedReturn, optimizerVars.portfolioVariance, optimizerVars.lambdaE,
+                    optimizerVars.a0, optimizerVars.a1, optimizerVars.a2);
+            out.record(optimizerVars.portfolioWeights, 0, numSecurities);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the header and all corner portfolios of a frontier.
+     *
+     * @param frontier The frontier, with numSecurities securities.
+     * @throws IOException If the writer fails.
+     */
+    public void write(EfficientFrontier frontier) throws IOException {
+        init();
+        for (int c = 0; c < frontier.size(); c++) {
+            record(c + 1, frontier.getExpectedReturn(c), frontier.getVariance(c), frontier.getLambdaE(c),
+                    frontier.getA0(c), frontier.getA1(c), frontier.getA2(c));
+            for (int j = 0; j < numSecurities; j++) {
+                out.field(frontier.getWeight(c, j));
+            }
+            out.endRecord();
+        }
+    }
+
+    /**
+     * Writes the fields before the weights.
+     */
+    private void record(int corner, double e, double v, double lambdaE, double a0, double a1, double a2) throws IOException {
+        out.field(corner).field(e).field(Math.sqrt(v)).field(lambdaE);
+        if (a0 != Optimizer.INVALID && !Double.isNaN(a0)) {
+            out.field(a0).field(a1).field(a2);
+        } else {
+            out.field((CharSequence) null).field((CharSequence) null).field((CharSequence) null);
+        }
+    }
+}
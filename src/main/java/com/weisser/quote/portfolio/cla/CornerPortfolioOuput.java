@@ -12,8 +12,8 @@ public interface CornerPortfolioOuput {
 
 	/**
 	 * Display the current corner portfolio on STDOUT.
-	 * @param inputVars The input variables.
+	 * @param problem The problem.
 	 * @param optimizerVars The output variables.
 	 */
-	void cornerPortfolio(InputVariables inputVars, OptimizerVariables optimizerVars, int clacount);
+	void cornerPortfolio(Problem problem, OptimizerVariables optimizerVars, int clacount);
 }
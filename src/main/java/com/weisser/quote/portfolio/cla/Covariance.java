@@ -0,0 +1,73 @@
+package com.weisser.quote.portfolio.cla;
+
+/**
+ * Covariance matrix of the securities, as used by the critical line algorithm.
+ *
+ * Besides single elements the algorithm needs products of whole rows with a vector, so an
+ * implementation can use its structure: {@link SymmetricMatrix} stores the matrix densely in
+ * packed form, {@link FactorCovariance} never forms it.
+ */
+public interface Covariance {
+    /**
+     * Returns the number of securities.
+     *
+     * @return The number of rows and columns.
+     */
+    int size();
+
+    /**
+     * Returns one covariance.
+     *
+     * @param i The first security.
+     * @param j The second security.
+     * @return The covariance of i and j.
+     */
+    double get(int i, int j);
+
+    /**
+     * Computes y1[j] = C(j,ALL) * x1 and y2[j] = C(j,ALL) * x2 for the rows j = rows[from] ..
+     * rows[to - 1]. Elements of y1 and y2 for other rows are not changed, so disjoint ranges may
+     * be computed concurrently.
+     *
+     * @param rows The rows to compute.
+     * @param from The first entry of rows to use.
+     * @param to The entry of rows after the last one to use.
+     * @param x1 The first vector, at least size() elements.
+     * @param y1 The first result, indexed by row.
+     * @param x2 The second vector, at least size() elements.
+     * @param y2 The second result, indexed by row.
+     */
+    void multiplyRows(int[] rows, int from, int to, double[] x1, double[] y1, double[] x2, double[] y2);
+
+    /**
+     * Adds C(ALL,k) * x1[k] to y1 and C(ALL,k) * x2[k] to y2 for the columns k = cols[from] ..
+     * cols[to - 1], i.e. y += C * x for vectors x that are zero outside these columns. Used to
+     * update products with vectors of which only a few elements changed.
+     *
+     * @param cols The columns to add, without duplicates.
+     * @param from The first entry of cols to use.
+     * @param to The entry of cols after the last one to use.
+     * @param x1 The first vector, indexed by column.
+     * @param y1 The first result, size() elements.
+     * @param x2 The second vector, indexed by column.
+     * @param y2 The second result, size() elements.
+     */
+    void multiplyColumns(int[] cols, int from, int to, double[] x1, double[] y1, double[] x2, double[] y2);
+
+    /**
+     * Returns true if {@link #multiplyRows} computes each row independently at a cost of about
+     * size() multiply-adds, so that the rows may be split between threads. False if most of the
+     * work is shared by the rows of a call, like B' * x of a {@link FactorCovariance}.
+     *
+     * @return True for a dense matrix.
+     */
+    boolean isDense();
+
+    /**
+     * Returns x' * C * x, e.g. the variance of a portfolio with weights x.
+     *
+     * @param x The vector, at least size() elements.
+     * @return x' * C * x.
+     */
+    double quadraticForm(double[] x);
+}
@@ -0,0 +1,456 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Covariance matrix of a whole history of returns, T observations of N securities, with
+ * optional {@link Shrinkage}.
+ *
+ * The O(T * N^2) products are computed in tiles: BLOCK x BLOCK securities over TIME_BLOCK
+ * observations, with both panels of centered returns copied into small arrays that stay in the
+ * cache. Each block of BLOCK rows of the lower triangle is one task on a {@link ForkJoinPool}
+ * and owns its rows of the result, so no sums are merged and the matrix does not depend on
+ * the number of threads. The result is written straight into a packed {@link SymmetricMatrix},
+ * e.g. the covariance matrix of the {@link InputVariables}, and shrunk in place.
+ *
+ * Unlike {@link CovarianceEstimator} the returns must all be known; in exchange the work is
+ * blocked and parallel instead of one rank-1 update per observation.
+ */
+public final class CovarianceBuilder {
+
+    /**
+     * Securities per tile.
+     */
+    static final int BLOCK = 64;
+
+    /**
+     * Observations per tile.
+     */
+    static final int TIME_BLOCK = 256;
+
+    /**
+     * One row of returns per observation, oldest first.
+     */
+    private final double[][] returns;
+
+    private final int numObservations;
+    private final int numSecurities;
+
+    private final double[] mean;
+
+    private Shrinkage shrinkage = Shrinkage.NONE;
+
+    /**
+     * Pool for the tiles, or null to compute them in the calling thread.
+     */
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    private double shrinkageIntensity;
+
+    /**
+     * Creates a builder. The returns are not copied and must not change until the matrix is
+     * built.
+     *
+     * @param returns One row of returns per observation, at least two observations with the same
+     *        number of securities.
+     */
+    public CovarianceBuilder(double[][] returns) {
+        if (returns.length < 2) {
+            throw new IllegalArgumentException("CovarianceBuilder: at least 2 observations needed, got " + returns.length);
+        }
+        this.returns = returns;
+        this.numObservations = returns.length;
+        this.numSecurities = returns[0].length;
+
+        for (int t = 1; t < numObservations; t++) {
+            if (returns[t].length != numSecurities) {
+                throw new IllegalArgumentException("CovarianceBuilder: observation " + t + " has "
+                        + returns[t].length + " returns, expected " + numSecurities);
+            }
+        }
+
+        mean = new double[numSecurities];
+        for (double[] r : returns) {
+            for (int i = 0; i < numSecurities; i++) {
+                mean[i] += r[i];
+            }
+        }
+        for (int i = 0; i < numSecurities; i++) {
+            mean[i] /= numObservations;
+        }
+    }
+
+    public int getNumSecurities() {
+        return numSecurities;
+    }
+
+    public int getNumObservations() {
+        return numObservations;
+    }
+
+    /**
+     * Returns a copy of the mean of the observations.
+     *
+     * @return The mean return of each security.
+     */
+    public double[] getMean() {
+        return mean.clone();
+    }
+
+    /**
+     * @param shrinkage The shrinkage of the next matrix built, {@link Shrinkage#NONE} by default.
+     */
+    public void setShrinkage(Shrinkage shrinkage) {
+        this.shrinkage = shrinkage;
+    }
+
+    /**
+     * Sets the pool on which the tiles are computed. The default is the common pool.
+     *
+     * @param pool The pool, or null to compute in the calling thread.
+     */
+    public void setParallelism(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the shrinkage intensity delta of the last matrix built: the result is
+     * delta * target + (1 - delta) * sample covariance, 0 without shrinkage.
+     *
+     * @return The shrinkage intensity, between 0 and 1.
+     */
+    public double getShrinkageIntensity() {
+        return shrinkageIntensity;
+    }
+
+    /**
+     * Writes the covariance matrix into the covariance matrix of the input variables, without an
+     * intermediate copy.
+     *
+     * @param inputVars Input variables with numSecurities securities, after init().
+     */
+    public void publish(InputVariables inputVars) {
+        if (inputVars.getNumSecurities() != numSecurities) {
+            throw new IllegalArgumentException("publish: numSecurities (" + numSecurities + ") and inputVars ("
+                    + inputVars.getNumSecurities() + ") mismatch");
+        }
+        build(inputVars.getCovarianceMatrix());
+    }
+
+    /**
+     * Overwrites a matrix with the covariance matrix. The sample covariance has the divisor
+     * T - 1; the shrinkage intensity is estimated as in the papers, with the divisor T.
+     *
+     * @param target A matrix of numSecurities rows and columns.
+     */
+    public void build(SymmetricMatrix target) {
+        if (target.size() != numSecurities) {
+            throw new IllegalArgumentException("build: numSecurities (" + numSecurities + ") and target.size() ("
+                    + target.size() + ") mismatch");
+        }
+        double[] data = target.data();
+        int numBlocks = (numSecurities + BLOCK - 1) / BLOCK;
+
+        if (pool == null || numBlocks < 2) {
+            new RowBlocks(data, 0, numBlocks).compute();
+        } else {
+            pool.invoke(new RowBlocks(data, 0, numBlocks));
+        }
+
+        double divisor = numObservations - 1;
+        for (int k = 0; k < data.length; k++) {
+            data[k] /= divisor;
+        }
+
+        switch (shrinkage) {
+            case LEDOIT_WOLF:
+                shrinkageIntensity = shrinkToIdentity(data);
+                break;
+            case CONSTANT_CORRELATION:
+                shrinkageIntensity = shrinkToConstantCorrelation(data);
+                break;
+            default:
+                shrinkageIntensity = 0;
+        }
+    }
+
+    /**
+     * Computes rows i0 .. i1 - 1 of the sums of the products of the centered returns.
+     */
+    private void accumulate(double[] data, int i0, int i1, double[] panelI, double[] panelJ) {
+        int i, t0;
+
+        for (i = i0; i < i1; i++) {
+            int row = SymmetricMatrix.rowOffset(i);
+            for (int j = 0; j <= i; j++) {
+                data[row + j] = 0;
+            }
+        }
+
+        for (t0 = 0; t0 < numObservations; t0 += TIME_BLOCK) {
+            int length = Math.min(TIME_BLOCK, numObservations - t0);
+            pack(panelI, i0, i1, t0, length);
+
+            for (int j0 = 0; j0 < i1; j0 += BLOCK) {
+                int j1 = Math.min(j0 + BLOCK, i1);
+                if (j0 == i0) {
+                    tile(data, panelI, i0, i1, panelI, j0, j1, length);
+                } else {
+                    pack(panelJ, j0, j1, t0, length);
+                    tile(data, panelI, i0, i1, panelJ, j0, j1, length);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the centered returns of securities i0 .. i1 - 1 at observations t0 .. t0 + length - 1
+     * into panel, one run of length observations per security.
+     */
+    private void pack(double[] panel, int i0, int i1, int t0, int length) {
+        for (int t = 0; t < length; t++) {
+            double[] r = returns[t0 + t];
+            for (int i = i0; i < i1; i++) {
+                panel[(i - i0) * length + t] = r[i] - mean[i];
+            }
+        }
+    }
+
+    /**
+     * Adds the products of one tile to the elements (i, j), j &lt;= i, of rows i0 .. i1 - 1 and
+     * columns j0 .. j1 - 1. Two rows and two columns are taken at a time, so each value loaded
+     * is used twice.
+     */
+    private static void tile(double[] data, double[] panelI, int i0, int i1, double[] panelJ, int j0, int j1,
+                             int length) {
+        int i, j, t;
+
+        for (i = i0; i < i1; i += 2) {
+            int a = (i - i0) * length;
+            int row = SymmetricMatrix.rowOffset(i);
+            int end = Math.min(j1, i + 1);
+
+            if (i + 1 == i1) {
+                for (j = j0; j < end; j++) {
+                    int c = (j - j0) * length;
+                    double s = 0;
+                    for (t = 0; t < length; t++) {
+                        s += panelI[a + t] * panelJ[c + t];
+                    }
+                    data[row + j] += s;
+                }
+                break;
+            }
+
+            int b = a + length;
+            int nextRow = row + i + 1;
+            for (j = j0; j + 1 < end; j += 2) {
+                int c = (j - j0) * length;
+                int d = c + length;
+                double s00 = 0, s01 = 0, s10 = 0, s11 = 0;
+                for (t = 0; t < length; t++) {
+                    double x0 = panelI[a + t];
+                    double x1 = panelI[b + t];
+                    double y0 = panelJ[c + t];
+                    double y1 = panelJ[d + t];
+                    s00 += x0 * y0;
+                    s01 += x0 * y1;
+                    s10 += x1 * y0;
+                    s11 += x1 * y1;
+                }
+                data[row + j] += s00;
+                data[row + j + 1] += s01;
+                data[nextRow + j] += s10;
+                data[nextRow + j + 1] += s11;
+            }
+            // The last column of row i, and the column i + 1 of row i + 1 in a diagonal tile.
+            for (; j < Math.min(j1, i + 2); j++) {
+                int c = (j - j0) * length;
+                double s0 = 0, s1 = 0;
+                for (t = 0; t < length; t++) {
+                    double y = panelJ[c + t];
+                    s0 += panelI[a + t] * y;
+                    s1 += panelI[b + t] * y;
+                }
+                if (j <= i) {
+                    data[row + j] += s0;
+                }
+                data[nextRow + j] += s1;
+            }
+        }
+    }
+
+    /**
+     * Shrinks towards mu * I, mu the average variance. With the sample covariance S (divisor
+     * T), the centered returns z(t) and the squared Frobenius norm |.|:
+     * d^2 = |S - mu * I|, b^2 = min(d^2, sum |z(t) * z(t)' - S| / T^2) and delta = b^2 / d^2.
+     *
+     * @return delta.
+     */
+    private double shrinkToIdentity(double[] data) {
+        int n = numSecurities;
+        double scale = (numObservations - 1) / (double) numObservations;
+        double trace = 0;
+        double norm = 0;
+        int i, j;
+
+        for (i = 0; i < n; i++) {
+            int row = SymmetricMatrix.rowOffset(i);
+            for (j = 0; j < i; j++) {
+                norm += 2 * data[row + j] * data[row + j];
+            }
+            trace += data[row + i];
+            norm += data[row + i] * data[row + i];
+        }
+        trace *= scale;
+        norm *= scale * scale;
+
+        double mu = trace / n;
+        double d2 = norm - n * mu * mu;
+        if (!(d2 > 0)) {
+            return 0;
+        }
+
+        // sum |z(t) * z(t)' - S| = sum |z(t)|^4 - T * |S|
+        double fourth = 0;
+        for (double[] r : returns) {
+            double sq = 0;
+            for (i = 0; i < n; i++) {
+                double z = r[i] - mean[i];
+                sq += z * z;
+            }
+            fourth += sq * sq;
+        }
+        double b2 = Math.min(d2, (fourth / numObservations - norm) / numObservations);
+        double delta = Math.max(0, b2) / d2;
+        double target = mu / scale;
+
+        for (i = 0; i < n; i++) {
+            int row = SymmetricMatrix.rowOffset(i);
+            for (j = 0; j < i; j++) {
+                data[row + j] *= 1 - delta;
+            }
+            data[row + i] = delta * target + (1 - delta) * data[row + i];
+        }
+        return delta;
+    }
+
+    /**
+     * Shrinks towards F, F(i, i) = s(i, i) and F(i, j) = r * sigma(i) * sigma(j) with the average
+     * sample correlation r. delta = (pi - rho) / gamma / T, clipped to [0, 1], with the sums pi,
+     * rho and gamma of the paper. The sums over all pairs (i, j) of the fourth moments reduce to
+     * sums over the observations of O(N) terms, so this costs O(T * N + N^2).
+     *
+     * @return delta.
+     */
+    private double shrinkToConstantCorrelation(double[] data) {
+        int n = numSecurities;
+        int numObs = numObservations;
+        double scale = (numObs - 1) / (double) numObs;
+        double[] sigma = new double[n];
+        int i, j;
+
+        if (n < 2) {
+            return 0;
+        }
+        for (i = 0; i < n; i++) {
+            sigma[i] = Math.sqrt(scale * data[SymmetricMatrix.rowOffset(i) + i]);
+        }
+
+        // Average correlation, |S| and sigma' * S * sigma off the diagonal.
+        double sumCorrelation = 0;
+        double norm = 0;
+        double diagonalNorm = 0;
+        double sigmaS = 0;
+        for (i = 0; i < n; i++) {
+            int row = SymmetricMatrix.rowOffset(i);
+            for (j = 0; j < i; j++) {
+                double s = scale * data[row + j];
+                double ss = sigma[i] * sigma[j];
+                if (ss > 0) {
+                    sumCorrelation += s / ss;
+                }
+                norm += 2 * s * s;
+                sigmaS += 2 * ss * s;
+            }
+            double s = scale * data[row + i];
+            diagonalNorm += s * s;
+        }
+        norm += diagonalNorm;
+        double r = 2 * sumCorrelation / ((double) n * (n - 1));
+
+        double gamma = 0;
+        for (i = 0; i < n; i++) {
+            int row = SymmetricMatrix.rowOffset(i);
+            for (j = 0; j < i; j++) {
+                double e = r * sigma[i] * sigma[j] - scale * data[row + j];
+                gamma += 2 * e * e;
+            }
+        }
+        if (!(gamma > 0)) {
+            return 0;
+        }
+
+        // pi = sum |z(t)|^4 / T - |S|, pi(i, i) summed = sum z(t, i)^4 / T - sum s(i, i)^2 and
+        // the theta terms sum_t sum_i z(t, i)^3 / sigma(i) * (sum_j sigma(j) * z(t, j) - sigma(i) * z(t, i)).
+        double[] z = new double[n];
+        double fourth = 0, diagonalFourth = 0, theta = 0;
+        for (double[] ret : returns) {
+            double sq = 0, w = 0;
+            for (i = 0; i < n; i++) {
+                z[i] = ret[i] - mean[i];
+                sq += z[i] * z[i];
+                w += sigma[i] * z[i];
+            }
+            fourth += sq * sq;
+            for (i = 0; i < n; i++) {
+                double z2 = z[i] * z[i];
+                diagonalFourth += z2 * z2;
+                if (sigma[i] > 0) {
+                    theta += z2 * z[i] / sigma[i] * (w - sigma[i] * z[i]);
+                }
+            }
+        }
+        double pi = fourth / numObs - norm;
+        double rho = diagonalFourth / numObs - diagonalNorm + r * (theta / numObs - sigmaS);
+        double delta = Math.max(0, Math.min(1, (pi - rho) / gamma / numObs));
+
+        for (i = 0; i < n; i++) {
+            int row = SymmetricMatrix.rowOffset(i);
+            for (j = 0; j < i; j++) {
+                data[row + j] = delta * r * sigma[i] * sigma[j] / scale + (1 - delta) * data[row + j];
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * The row blocks from .. to - 1 of the lower triangle, split in halves down to one block.
+     */
+    @SuppressWarnings("serial")
+    private final class RowBlocks extends RecursiveAction {
+        private final double[] data;
+        private final int from, to;
+
+        RowBlocks(double[] data, int from, int to) {
+            this.data = data;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < 2 || pool == null) {
+                double[] panelI = new double[BLOCK * TIME_BLOCK];
+                double[] panelJ = new double[BLOCK * TIME_BLOCK];
+                for (int b = from; b < to; b++) {
+                    accumulate(data, b * BLOCK, Math.min(numSecurities, (b + 1) * BLOCK), panelI, panelJ);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RowBlocks(data, from, mid), new RowBlocks(data, mid, to));
+            }
+        }
+    }
+}
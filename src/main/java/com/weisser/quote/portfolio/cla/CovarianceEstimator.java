@@ -0,0 +1,219 @@
+package com.weisser.quote.portfolio.cla;
+
+/**
+ * Online estimator of the covariance matrix of security returns.
+ *
+ * Observations (one return per security) are added one at a time or in batches. Each
+ * observation is a symmetric rank-1 update of a packed {@link SymmetricMatrix}, so the history
+ * is never revisited. Two weightings are supported:
+ *
+ * <ul>
+ *     <li>Sample covariance (Welford's algorithm), all observations weighted equally.
+ *     <li>Exponentially weighted covariance with decay factor lambda, i.e.
+ *         C = lambda * C + lambda * (1 - lambda) * d * d' with d the deviation from the
+ *         exponentially weighted mean. The factor lambda is kept as a separate scale instead
+ *         of being applied to the whole matrix.
+ * </ul>
+ *
+ * The estimate is published with {@link #publish(InputVariables)} or {@link #getCovariance()}.
+ */
+public class CovarianceEstimator {
+
+    /**
+     * Below this scale the exponentially weighted sums are renormalized.
+     */
+    private static final double MIN_SCALE = 1E-100;
+
+    private final int numSecurities;
+
+    /**
+     * Decay factor lambda, or 1 for the sample covariance.
+     */
+    private final double decay;
+
+    /**
+     * Number of observations added.
+     */
+    private long count;
+
+    /**
+     * Mean of the observations (exponentially weighted if decay < 1).
+     */
+    private final double[] mean;
+
+    /**
+     * Sum of the outer products of the deviations, times 1 / scale.
+     */
+    private final SymmetricMatrix sums;
+
+    /**
+     * Scale of {@link #sums}, always 1 for the sample covariance.
+     */
+    private double scale = 1.0;
+
+    /**
+     * Work vector for the deviation of an observation from the mean.
+     */
+    private final double[] deviation;
+
+    /**
+     * Creates an estimator of the sample covariance.
+     *
+     * @param numSecurities The number of securities.
+     */
+    public CovarianceEstimator(int numSecurities) {
+        this(numSecurities, 1.0);
+    }
+
+    /**
+     * Creates an estimator of the exponentially weighted covariance.
+     *
+     * @param numSecurities The number of securities.
+     * @param decay The decay factor lambda, 0 < lambda <= 1, e.g. 0.94. With 1 the sample
+     *        covariance is estimated.
+     */
+    public CovarianceEstimator(int numSecurities, double decay) {
+        if (!(decay > 0 && decay <= 1)) {
+            throw new IllegalArgumentException("decay must be in (0, 1]: " + decay);
+        }
+        this.numSecurities = numSecurities;
+        this.decay = decay;
+        this.mean = new double[numSecurities];
+        this.sums = new SymmetricMatrix(numSecurities);
+        this.deviation = new double[numSecurities];
+    }
+
+    public int getNumSecurities() {
+        return numSecurities;
+    }
+
+    /**
+     * Returns the number of observations added so far.
+     *
+     * @return The number of observations.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Adds one observation.
+     *
+     * @param returns The return of each security, numSecurities elements.
+     */
+    public void add(double[] returns) {
+        int n = numSecurities;
+        count++;
+
+        if (count == 1) {
+            System.arraycopy(returns, 0, mean, 0, n);
+            return;
+        }
+
+        for (int j = 0; j < n; j++) {
+            deviation[j] = returns[j] - mean[j];
+        }
+
+        if (decay == 1.0) {
+            // Welford: mean += d / count, sums += (count - 1) / count * d * d'
+            for (int j = 0; j < n; j++) {
+                mean[j] += deviation[j] / count;
+            }
+            sums.rankOneUpdate(n, deviation, (double) count / (count - 1));
+        } else {
+            // mean += (1 - lambda) * d, C = lambda * (C + (1 - lambda) * d * d')
+            double w = 1.0 - decay;
+            for (int j = 0; j < n; j++) {
+                mean[j] += w * deviation[j];
+            }
+            sums.rankOneUpdate(n, deviation, scale / w);
+            scale *= decay;
+
+            if (scale < MIN_SCALE) {
+                double[] s = sums.data();
+                for (int k = 0; k < s.length; k++) {
+                    s[k] *= scale;
+                }
+                scale = 1.0;
+            }
+        }
+    }
+
+    /**
+     * Adds a batch of observations, oldest first.
+     *
+     * @param returns One row of returns per observation.
+     */
+    public void addAll(double[][] returns) {
+        for (double[] r : returns) {
+            add(r);
+        }
+    }
+
+    /**
+     * Returns a copy of the mean of the observations.
+     *
+     * @return The mean return of each security.
+     */
+    public double[] getMean() {
+        return mean.clone();
+    }
+
+    /**
+     * Returns the current estimate of one covariance.
+     *
+     * @param i The first security.
+     * @param j The second security.
+     * @return The covariance of i and j, 0 before the second observation.
+     */
+    public double getCovariance(int i, int j) {
+        return sums.get(i, j) * factor();
+    }
+
+    /**
+     * Returns a snapshot of the covariance matrix: the lower triangle row by row, as expected
+     * by {@link InputVariables#setCovariance(double[])}.
+     *
+     * @return The covariance matrix in packed form.
+     */
+    public double[] getCovariance() {
+        double[] s = sums.data();
+        double[] c = new double[s.length];
+        double f = factor();
+
+        for (int k = 0; k < s.length; k++) {
+            c[k] = s[k] * f;
+        }
+        return c;
+    }
+
+    /**
+     * Writes the current estimate into the covariance matrix of the input variables, without an
+     * intermediate copy.
+     *
+     * @param inputVars Input variables with numSecurities securities, after init().
+     */
+    public void publish(InputVariables inputVars) {
+        if (inputVars.getNumSecurities() != numSecurities) {
+            throw new IllegalArgumentException("publish: numSecurities (" + numSecurities + ") and inputVars ("
+                    + inputVars.getNumSecurities() + ") mismatch");
+        }
+        double[] s = sums.data();
+        double[] c = inputVars.getCovarianceMatrix().data();
+        double f = factor();
+
+        for (int k = 0; k < s.length; k++) {
+            c[k] = s[k] * f;
+        }
+    }
+
+    /**
+     * Factor from {@link #sums} to the covariance.
+     */
+    private double factor() {
+        if (count < 2) {
+            return 0.0;
+        }
+        return decay == 1.0 ? 1.0 / (count - 1) : scale;
+    }
+}
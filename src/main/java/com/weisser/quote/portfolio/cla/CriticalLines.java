@@ -1,16 +1,106 @@
 package com.weisser.quote.portfolio.cla;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
 public class CriticalLines {
+    /**
+     * Smallest number of multiply-adds worth a task of its own in the parallel steps.
+     */
+    private static final int MIN_TASK_WORK = 1 << 15;
+
+    /**
+     * Number of iterations after which vectors that are updated incrementally are computed from
+     * scratch again, to keep rounding errors from piling up.
+     */
+    static final int FULL_RECOMPUTE_INTERVAL = 50;
+
+    /**
+     * The interval in use, {@link #FULL_RECOMPUTE_INTERVAL} unless a test sets it before
+     * {@link #setup}. With 0 the vectors are computed from scratch in every iteration.
+     */
+    int recomputeInterval = FULL_RECOMPUTE_INTERVAL;
+
     private Output output;
 
+    /**
+     * Trace levels of {@link #output}, queried once in {@link #setup}.
+     */
+    private boolean debugEnabled, traceEnabled;
+
     private double[] alphav;
     private double[] betav;
-    private double[] xi;
     private double[] bbar;
-    private double[][] Mi;
 
     /**
-     * Variables for {@link #iteration(States, InputVariables, OptimizerVariables, int)}.
+     * M-bar-inverse, restricted to the IN variables. Row and column s belong to variable
+     * slotVar[s]; only the first numSlots rows are in use. Symmetric, so only the lower triangle
+     * is stored. The capacity grows and shrinks with the IN set instead of being n+m.
+     */
+    private SymmetricMatrix Mi;
+
+    /**
+     * Slot of each variable in Mi, -1 if the variable is OUT. Size: n+m.
+     */
+    private int[] slot;
+
+    /**
+     * Variable held in each slot of Mi.
+     */
+    private int[] slotVar;
+
+    /**
+     * Number of slots in use, equal to the number of IN variables.
+     */
+    private int numSlots;
+
+    /**
+     * Smallest capacity Mi is shrunk to.
+     */
+    private int minCapacity;
+
+    /**
+     * Slot-ordered work vectors, sized like Mi.
+     */
+    private double[] xi, bbarIn, muIn, alphaIn, betaIn;
+
+    /**
+     * Iterations since alpha and beta of the IN variables were computed as Mi * bbar and
+     * Mi * mu. In between, {@link #addVariable} and {@link #deleteVariable} update them.
+     */
+    private int alphaAge;
+
+    /**
+     * C * alphav and C * betav for all securities, needed in step C12 for the OUT securities.
+     * Between two iterations only alpha and beta of the IN variables and of the variable that
+     * moved change, so only their columns of C are added (see {@link #updateProducts}).
+     * alphaSeen and betaSeen are the alphav and betav the products belong to.
+     */
+    private double[] covAlpha, covBeta, alphaSeen, betaSeen;
+
+    /**
+     * Iterations since covAlpha and covBeta were computed from scratch.
+     */
+    private int productAge;
+
+    /**
+     * Work vectors of {@link #updateProducts}: securities whose alpha or beta changed, the
+     * changes (by security), and all securities in order.
+     */
+    private int[] changed, allSecurities;
+    private double[] alphaChange, betaChange;
+
+    /**
+     * Pool for the parallel steps C11 and C12, or null to run them sequentially. A step runs in
+     * parallel if it takes at least parallelThreshold multiply-adds.
+     */
+    private ForkJoinPool pool;
+    private int parallelThreshold;
+
+    /**
+     * Variables for {@link #iteration(States, Workspace, OptimizerVariables, int)}.
      */
     private int jMaxA;
     private Direction outDirection;
@@ -26,25 +116,38 @@ public class CriticalLines {
     /**
      * Initialize the Critical Line Algorithm.
      *
-     * TODO Almost all methods of this class need access to variableStates, inputVars, optimizerVars.
+     * TODO Almost all methods of this class need access to variableStates, work, optimizerVars.
      *      We should take them in the constructor or in setup and store them to shorten the parameter lists of
      *      the methods.
      */
-    public void setup(States variableStates, InputVariables inputVars, OptimizerVariables optimizerVars, Output output) {
+    public void setup(States variableStates, Workspace work, OptimizerVariables optimizerVars, Output output) {
         int j0, j;
         int k0, k, i;
         double sum;
-        int n = inputVars.getNumVariables();
-        int m = inputVars.getNumConstraints();
+        int n = work.getNumVariables();
+        int m = work.getNumConstraints();
 
         this.output = output;
+        this.debugEnabled = output.isTraceEnabled(TraceLevel.DEBUG);
+        this.traceEnabled = output.isTraceEnabled(TraceLevel.TRACE);
 
         // In VB sind die mit ReDim alphav(1 To n + m) As Double angelegt.
         alphav = new double[n + m];
         betav = new double[n + m];
-        xi = new double[n + m];
         bbar = new double[n + m];
-        Mi = new double[n + m][n + m];
+        covAlpha = new double[n];
+        covBeta = new double[n];
+        alphaSeen = new double[n];
+        betaSeen = new double[n];
+        alphaChange = new double[n];
+        betaChange = new double[n];
+        changed = new int[n];
+        allSecurities = new int[work.getNumSecurities()];
+        for (j = 0; j < allSecurities.length; j++) {
+            allSecurities[j] = j;
+        }
+        productAge = recomputeInterval;
+        alphaAge = recomputeInterval;
 
         for (j0 = 0; j0 < variableStates.getOutVarCount(); j0++) {
             j = variableStates.getOutVar(j0);   // variableStates.getOutVar(j0);
@@ -56,27 +159,52 @@ public class CriticalLines {
             variableStates.addInVar(j);
         }
 
-        // <C4> Add A and A' to MMat (already contains C)
-        for (i = 0; i < m; i++) {
-            for (j = 0; j < n; j++) {
-                inputVars.mMat[n + i][j] = inputVars.constraintLHS[i][j];
-                inputVars.mMat[j][n + i] = inputVars.constraintLHS[i][j];
-            }
+        // <C4> MMat = |C A'; A 0| is not set up, it is read through work.getM().
+
+        // Mi starts with the m basic variables and the m lambda variables.
+        minCapacity = Math.min(Math.max(2 * variableStates.getInVarCount(), 16), n + m);
+        Mi = new SymmetricMatrix(minCapacity);
+        xi = new double[minCapacity];
+        bbarIn = new double[minCapacity];
+        muIn = new double[minCapacity];
+        alphaIn = new double[minCapacity];
+        betaIn = new double[minCapacity];
+        slotVar = new int[minCapacity];
+        slot = new int[n + m];
+        Arrays.fill(slot, -1);
+        numSlots = 0;
+
+        for (j0 = 0; j0 < variableStates.getInVarCount(); j0++) {
+            addSlot(variableStates.getInVar(j0));
         }
 
         // <C5> Compute bbar vector.
+        // For a lambda the OUT variables of M(j,OUT) are the non-zeros of its row of A that are
+        // not IN.
+        SparseMatrix a = work.getProblem().constraintRows();
+        int[] rowStart = a.rowStart();
+        int[] columns = a.columns();
+        double[] values = a.values();
+
         for (j0 = 0; j0 < variableStates.getInVarCount(); j0++) {
             j = variableStates.getInVar(j0);
 
             if (j <= n - 1) {
                 sum = 0.0;
+
+                for (k0 = 0; k0 < variableStates.getOutVarCount(); k0++) {
+                    k = variableStates.getOutVar(k0);
+                    sum = sum - work.getM(j, k) * optimizerVars.portfolioWeights[k];
+                }
             } else {
-                sum = inputVars.constraintRHS[j - n];  // should be okay !!!
-            }
+                sum = work.getConstraintRHS(j - n);  // should be okay !!!
 
-            for (k0 = 0; k0 < variableStates.getOutVarCount(); k0++) {
-                k = variableStates.getOutVar(k0);
-                sum = sum - inputVars.mMat[j][k] * optimizerVars.portfolioWeights[k];
+                for (int p = rowStart[j - n]; p < rowStart[j - n + 1]; p++) {
+                    k = columns[p];
+                    if (!variableStates.isIn(k)) {
+                        sum = sum - values[p] * optimizerVars.portfolioWeights[k];
+                    }
+                }
             }
             bbar[j] = sum;
         }
@@ -90,58 +218,92 @@ public class CriticalLines {
             j = variableStates.getInVar(j0);
 
             for (i = 0; i < m; i++) {
-                Mi[n + i][j] = optimizerVars.Ai[j0][i];
-                Mi[j][n + i] = Mi[n + i][j];
+                Mi.set(slot[n + i], slot[j], optimizerVars.Ai.get(j0, i));
             }
         }
 
         // T = Ai' * C(IN,IN)
-        double[][] T = new double[m][m];
+        Matrix T = new Matrix(m, m);
 
         for (i = 0; i < m; i++) {
             for (j0 = 0; j0 < m; j0++) {
                 j = variableStates.getInVar(j0);
                 sum = 0;
                 for (k = 0; k < m; k++) {
-                    sum -= optimizerVars.Ai[k][i] * inputVars.mMat[variableStates.getInVar(k)][j];
+                    sum -= optimizerVars.Ai.get(k, i) * work.getM(variableStates.getInVar(k), j);
                 }
-                T[i][j0] = sum;
+                T.set(i, j0, sum);
             }
         }
 
-        // Lower right portion of Mi is then T * Ai
+        // Lower right portion of Mi is then T * Ai (symmetric, lower triangle only)
         for (i = 0; i < m; i++) {
-            for (j = 0; j < m; j++) {
+            for (j = 0; j <= i; j++) {
                 sum = 0.0;
                 for (k = 0; k < m; k++) {
-                    sum += T[i][k] * optimizerVars.Ai[k][j];
+                    sum += T.get(i, k) * optimizerVars.Ai.get(k, j);
                 }
-                Mi[n + i][n + j] = sum;
+                Mi.set(slot[n + i], slot[n + j], sum);
             }
         }
     }
 
     /**
-     * Iteration cycle.
+     * Lets the steps C11 and C12 of large iterations run on a fork/join pool. The result does not
+     * depend on the number of threads: ties are resolved in favor of the later variable, as in the
+     * sequential scan. With tracing enabled the steps always run sequentially.
+     *
+     * @param pool The pool, or null to run sequentially.
+     * @param threshold The smallest number of multiply-adds of a step to run it in parallel.
      */
-    public void iteration(States variableStates, InputVariables inputVars, OptimizerVariables optimizerVars, int clacount) {
-        int j0, j, k0, k;
-        double tempLambdaA, tempLambdaB;
-        double alpha, beta, gamma, delta;
+    void setParallelism(ForkJoinPool pool, int threshold) {
+        this.pool = (pool != null && pool.getParallelism() > 1) ? pool : null;
+        this.parallelThreshold = threshold;
+    }
 
-        variableStates.dump(output.simplexScreenOutputStream());
+    /**
+     * Iteration cycle.
+     */
+    public void iteration(States variableStates, Workspace work, OptimizerVariables optimizerVars, int clacount) {
+        int j0, j;
+        double tempLambdaA;
+        double alpha, beta;
+        int n = work.getNumVariables();
+        int m = work.getNumConstraints();
+        int moved = -1;
+        Direction movedDirection = null;
+        boolean added = false;
+        SolverMetrics.Recorder metrics = work.metrics;
+        long time = metrics != null ? System.nanoTime() : 0;
+
+        if (debugEnabled) {
+            variableStates.dump(output.simplexScreenOutputStream());
+        }
 
         // <C10> If this is not the first iteration, then add or delete the
         // variable determined in previous iteration.
         if (clacount > 1) {
-            output.println_cla("<C10>" + clacount + "; lambdaA = " + lambdaA + " lambdaB = " + lambdaB);
-            output.println_cla("<C10>" + clacount + "; jMaxA = " + jMaxA + " jMaxB = " + jMaxB);
-            output.println_cla("<C10>" + clacount + "; inDirection = " + inDirection + " outDirection = " + outDirection);
+            if (debugEnabled) {
+                output.println_cla("<C10>" + clacount + "; lambdaA = " + lambdaA + " lambdaB = " + lambdaB);
+                output.println_cla("<C10>" + clacount + "; jMaxA = " + jMaxA + " jMaxB = " + jMaxB);
+                output.println_cla("<C10>" + clacount + "; inDirection = " + inDirection + " outDirection = " + outDirection);
+            }
 
             if (lambdaA > lambdaB) {
-                deleteVariable(variableStates, inputVars, optimizerVars, jMaxA, outDirection, clacount);
+                moved = jMaxA;
+                movedDirection = outDirection;
+                deleteVariable(variableStates, work, optimizerVars, jMaxA, outDirection, clacount);
+                if (metrics != null) {
+                    time = lap(metrics, SolverMetrics.Step.DELETE, time);
+                }
             } else {
-                addVariable(variableStates, inputVars, optimizerVars, jMaxB, inDirection, clacount);
+                moved = jMaxB;
+                movedDirection = inDirection;
+                added = true;
+                addVariable(variableStates, work, optimizerVars, jMaxB, inDirection, clacount);
+                if (metrics != null) {
+                    time = lap(metrics, SolverMetrics.Step.ADD, time);
+                }
             }
         }
 
@@ -150,263 +312,571 @@ public class CriticalLines {
         lambdaA = 0;
         outDirection = Direction.InitialState;
 
-        for (j0 = 0; j0 < variableStates.getInVarCount(); j0++) {
-            // compute alpha and beta for variable.
-            j = variableStates.getInVar(j0);
-            alpha = 0;
-            beta = 0;
-
-            for (k0 = 0; k0 < variableStates.getInVarCount(); k0++) {
-                k = variableStates.getInVar(k0);
-                alpha = alpha + Mi[j][k] * bbar[k];
-                //if (k <= inputVars.n) {
-                if (k <= inputVars.getNumVariables() - 1) {
-                    output.println_cla("<C11>" + clacount + "; k <= n; " + k + " <= " + (inputVars.getNumVariables() - 1));
-                    beta = beta + Mi[j][k] * inputVars.getExpectedReturn(k);
-                }
+        // alpha = Mi(IN,IN) * bbar(IN), beta = Mi(IN,IN) * mu(IN), with mu = 0 for the lambda
+        // variables. addVariable and deleteVariable keep them up to date in O(|IN|); every
+        // FULL_RECOMPUTE_INTERVAL iterations both products are taken in one pass over Mi.
+        if (alphaAge >= recomputeInterval) {
+            for (int s = 0; s < numSlots; s++) {
+                j = slotVar[s];
+                bbarIn[s] = bbar[j];
+                muIn[s] = expectedReturn(work, j);
+            }
+            if (runParallel((long) numSlots * numSlots)) {
+                pool.invoke(new InProducts(0, numSlots));
+            } else {
+                Mi.multiply(numSlots, bbarIn, alphaIn, muIn, betaIn);
             }
+            for (int s = 0; s < numSlots; s++) {
+                alphav[slotVar[s]] = alphaIn[s];
+                betav[slotVar[s]] = betaIn[s];
+            }
+            alphaAge = 0;
+        } else {
+            alphaAge++;
+        }
 
-            alphav[j] = alpha;
-            betav[j] = beta;
+        for (j0 = 0; j0 < variableStates.getInVarCount(); j0++) {
+            j = variableStates.getInVar(j0);
+            alpha = alphav[j];
+            beta = betav[j];
 
-            if (j < inputVars.getNumVariables()) {
-                output.println_cla("<C11>" + clacount + "; j < n; " + j + " <= " + (inputVars.getNumVariables()));
+            if (j < n) {
+                if (traceEnabled) {
+                    output.println_cla("<C11>" + clacount + "; j < n; " + j + " <= " + n);
+                }
 
                 // For non-lambda variable check for going OUT.
                 if (beta > Optimizer.EPSILON) {
                     // Check for hitting lower limit.
-                    tempLambdaA = (inputVars.lowerLimits[j] - alpha) / beta;
+                    tempLambdaA = (work.lowerLimits[j] - alpha) / beta;
                     if (tempLambdaA >= lambdaA) {
                         jMaxA = j;
                         lambdaA = tempLambdaA;
                         outDirection = Direction.Lower;
                     }
-                } else if (inputVars.upperLimits[j] < Optimizer.INFINITY && beta < -Optimizer.EPSILON) {
+                } else if (work.upperLimits[j] < Optimizer.INFINITY && beta < -Optimizer.EPSILON) {
                     // Check for hitting upper limit.
-                    tempLambdaA = (inputVars.upperLimits[j] - alpha) / beta;
+                    tempLambdaA = (work.upperLimits[j] - alpha) / beta;
                     if (tempLambdaA >= lambdaA) {
                         jMaxA = j;
                         lambdaA = tempLambdaA;
                         outDirection = Direction.Higher;
                     }
                 }
-                output.println_cla("<C11>" + clacount + "; lambdaA = " + lambdaA);
+                if (traceEnabled) {
+                    output.println_cla("<C11>" + clacount + "; lambdaA = " + lambdaA);
+                }
             }
         }
 
+        if (metrics != null) {
+            time = lap(metrics, SolverMetrics.Step.C11, time);
+        }
 
         // <C12> Determine which OUT variable wants to come IN first.
-        jMaxB = -1;
-        lambdaB = 0;
-        inDirection = Direction.InitialState;
+        updateProducts(variableStates, work, moved);
 
-        for (j0 = 0; j0 < variableStates.getOutVarCount(); j0++) {
+        int numOut = variableStates.getOutVarCount();
+        Candidate in;
+
+        if (runParallel((long) numOut * (m + 1))) {
+            in = pool.invoke(new OutScan(variableStates, work, 0, numOut, clacount));
+        } else {
+            in = scanOut(variableStates, work, 0, numOut, clacount);
+        }
+        jMaxB = in.j;
+        lambdaB = in.lambda;
+        inDirection = in.direction;
+
+        if (metrics != null) {
+            time = lap(metrics, SolverMetrics.Step.C12, time);
+        }
+
+        // <C13> The new lambda-E is the greater of lambda-A and lambda-B.
+        // If lambda-A is greater, then a variable first goes OUT as
+        // lambda-E is decreased. If lambda-B is greater, then a
+        // variable first comes IN is as lambda-E is decreased.
+        optimizerVars.lambdaE = Math.max(lambdaA, lambdaB);
+        optimizerVars.lambdaE = Math.max(optimizerVars.lambdaE, 0);
+
+        // <C14> Calculate the new corner portfolio, the E and v for
+        // new corner portfolio, and a0, al, and a2 between this and
+        // previous corner portfolio.
+        calcCornerPortfolio(variableStates, work, optimizerVars, clacount);
+
+        if (metrics != null) {
+            lap(metrics, SolverMetrics.Step.CORNER_PORTFOLIO, time);
+        }
+        if (Events.SINK != null) {
+            Events.SINK.corner(clacount, optimizerVars.lambdaE, moved, added, movedDirection,
+                    variableStates.getInVarCount());
+        }
+    }
+
+    /**
+     * Records the time since start for a step.
+     *
+     * @return The current time, the start of the next step.
+     */
+    private static long lap(SolverMetrics.Recorder metrics, SolverMetrics.Step step, long start) {
+        long now = System.nanoTime();
+        metrics.step(step, now - start);
+        return now;
+    }
+
+    /**
+     * Brings covAlpha = C * alphav and covBeta = C * betav up to date after step C11. Only the
+     * columns of the securities whose alpha or beta changed are added, i.e. of the IN securities
+     * and of the variable that moved, which costs O(n * |IN|) instead of O(n * |OUT|). Every
+     * {@link #FULL_RECOMPUTE_INTERVAL} iterations the products are computed from scratch.
+     *
+     * @param moved The variable that was added or deleted in step C10, or -1.
+     */
+    private void updateProducts(States variableStates, Workspace work, int moved) {
+        int numSecurities = work.getNumSecurities();
+        Covariance cov = work.getProblem().covariance();
+
+        if (productAge >= recomputeInterval) {
+            if (cov.isDense() && runParallel((long) numSecurities * numSecurities)) {
+                pool.invoke(new RowProducts(cov, 0, numSecurities));
+            } else {
+                cov.multiplyRows(allSecurities, 0, numSecurities, alphav, covAlpha, betav, covBeta);
+            }
+            System.arraycopy(alphav, 0, alphaSeen, 0, numSecurities);
+            System.arraycopy(betav, 0, betaSeen, 0, numSecurities);
+            productAge = 0;
+            return;
+        }
+        productAge++;
+
+        int numChanged = 0;
+        int numIn = variableStates.getInVarCount();
+        int[] inVars = variableStates.getInVars();
+        for (int j0 = 0; j0 <= numIn; j0++) {
+            int j = j0 < numIn ? inVars[j0] : moved;
+
+            if (j >= 0 && j < numSecurities && (alphav[j] != alphaSeen[j] || betav[j] != betaSeen[j])) {
+                alphaChange[j] = alphav[j] - alphaSeen[j];
+                betaChange[j] = betav[j] - betaSeen[j];
+                alphaSeen[j] = alphav[j];
+                betaSeen[j] = betav[j];
+                changed[numChanged++] = j;
+            }
+        }
+        if (numChanged > 0) {
+            cov.multiplyColumns(changed, 0, numChanged, alphaChange, covAlpha, betaChange, covBeta);
+        }
+    }
+
+    /**
+     * Step C12 for the OUT variables from .. to - 1: computes gamma and delta and returns the
+     * variable that wants to come IN first.
+     */
+    private Candidate scanOut(States variableStates, Workspace work, int from, int to, int clacount) {
+        int j0, j;
+        double tempLambdaB;
+        double gamma, delta;
+        int n = work.getNumVariables();
+        int numSecurities = work.getNumSecurities();
+        int[] outVars = variableStates.getOutVars();
+        SparseMatrix a = work.getProblem().constraintColumns();
+        int[] columnStart = a.rowStart();
+        int[] rows = a.columns();
+        double[] values = a.values();
+        Candidate in = new Candidate();
+
+        // Row j of MMat is row j of C (zero for slack variables and ABVs) followed by column j
+        // of A, of which only the non-zeros are read. The products with the rows of C are kept
+        // in covAlpha and covBeta.
+        for (j0 = from; j0 < to; j0++) {
             // Compute gamma and delta for variable.
-            j = variableStates.getOutVar(j0);
+            j = outVars[j0];
 
-            output.println_cla("<C12a>" + clacount + "; j0 = " + j0 + " j = " + j);
+            if (traceEnabled) {
+                output.println_cla("<C12a>" + clacount + "; j0 = " + j0 + " j = " + j);
+            }
 
             gamma = 0;
-            delta = -inputVars.getExpectedReturn(j);
-
-            for (k = 0; k < inputVars.getNumVariables() + inputVars.getNumConstraints(); k++) {
+            delta = -work.getExpectedReturn(j);
 
-                output.println_cla("<C12b>" + clacount + "; k = " + k);
+            if (j < numSecurities) {
+                gamma += covAlpha[j];
+                delta += covBeta[j];
+            }
 
-                gamma += inputVars.mMat[j][k] * alphav[k];
-                delta += inputVars.mMat[j][k] * betav[k];
+            for (int k = columnStart[j]; k < columnStart[j + 1]; k++) {
+                int i = n + rows[k];
+                gamma += values[k] * alphav[i];
+                delta += values[k] * betav[i];
             }
 
-            output.println_cla("<C12b1>" + clacount + "; gamma = " + gamma);
-            output.println_cla("<C12b2>" + clacount + "; delta = " + delta);
+            if (traceEnabled) {
+                output.println_cla("<C12b1>" + clacount + "; gamma = " + gamma);
+                output.println_cla("<C12b2>" + clacount + "; delta = " + delta);
+            }
 
             if (variableStates.isLo(j)) {
-                output.println_cla("<C12b3>" + clacount);
+                if (traceEnabled) {
+                    output.println_cla("<C12b3>" + clacount);
+                }
 
                 if (delta > Optimizer.EPSILON) {
-                    output.println_cla("<C12b4>" + clacount);
+                    if (traceEnabled) {
+                        output.println_cla("<C12b4>" + clacount);
+                    }
 
                     // Check for variable coming off lower limit.
                     tempLambdaB = -gamma / delta;
-
-                    if (tempLambdaB >= lambdaB) {
-                        jMaxB = j;
-                        lambdaB = tempLambdaB;
-                        inDirection = Direction.Higher;
-                    }
+                    in.offer(j, tempLambdaB, Direction.Higher);
                 }
             } else {
                 if (delta < -Optimizer.EPSILON) {   // 'at upper limit
 
-                    output.println_cla("<C12b5>" + clacount);
+                    if (traceEnabled) {
+                        output.println_cla("<C12b5>" + clacount);
+                    }
 
                     // Check for variable coming off upper limit.
                     tempLambdaB = -gamma / delta;
-                    if (tempLambdaB >= lambdaB) {
-                        jMaxB = j;
-                        lambdaB = tempLambdaB;
-                        inDirection = Direction.Lower;
-                    }
+                    in.offer(j, tempLambdaB, Direction.Lower);
+                }
+                if (traceEnabled) {
+                    output.println_cla("<C12c>" + clacount + "; lambdaB = " + in.lambda);
                 }
-                output.println_cla("<C12c>" + clacount + "; lambdaB = " + lambdaB);
             }
         }
+        return in;
+    }
 
-        // <C13> The new lambda-E is the greater of lambda-A and lambda-B.
-        // If lambda-A is greater, then a variable first goes OUT as
-        // lambda-E is decreased. If lambda-B is greater, then a
-        // variable first comes IN is as lambda-E is decreased.
-        optimizerVars.lambdaE = Math.max(lambdaA, lambdaB);
-        optimizerVars.lambdaE = Math.max(optimizerVars.lambdaE, 0);
-
-        // <C14> Calculate the new corner portfolio, the E and v for
-        // new corner portfolio, and a0, al, and a2 between this and
-        // previous corner portfolio.
-        calcCornerPortfolio(variableStates, inputVars, optimizerVars, clacount);
+    /**
+     * Returns true if a step of the given number of multiply-adds should run on the pool.
+     */
+    private boolean runParallel(long work) {
+        return pool != null && !traceEnabled && work >= parallelThreshold;
     }
 
     /**
-     * Do updates required for variable jAdd to come IN.
+     * The variable found by a scan over some variables, with its lambda and direction.
      */
-    private void addVariable(States variableStates, InputVariables inputVars, OptimizerVariables optimizerVars, int jAdd, Direction direction, int clacount) {
-        int j0, j;
-        int k0, k;
-        double sum, xij;
+    private static final class Candidate {
+        int j = -1;
+        double lambda = 0;
+        Direction direction = Direction.InitialState;
+
+        /**
+         * Takes variable j if its lambda is at least as large as the best so far, so that the
+         * last of several equal variables wins.
+         */
+        void offer(int j, double lambda, Direction direction) {
+            if (lambda >= this.lambda) {
+                this.j = j;
+                this.lambda = lambda;
+                this.direction = direction;
+            }
+        }
 
-        output.println_cla("<addvar>" + clacount + "; var = " + jAdd + " direction = " + direction);
+        /**
+         * Returns the result of scanning this part and then the later part, i.e. the same
+         * variable a single scan over both parts would find.
+         */
+        Candidate merge(Candidate later) {
+            return (later.j >= 0 && later.lambda >= lambda) ? later : this;
+        }
+    }
 
-        // <C20> update Mi for variable coming IN.
-        // xi = Mi(IN,IN) * M(IN,jAdd);
+    /**
+     * Step C11 in parallel: rows from .. to - 1 of alpha = Mi * bbar and beta = Mi * mu.
+     */
+    @SuppressWarnings("serial")
+    private final class InProducts extends RecursiveAction {
+        private final int from, to;
 
-        for (j0 = 0; j0 < variableStates.getInVarCount(); j0++) {
-            j = variableStates.getInVar(j0);
+        InProducts(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
 
-            output.println_cla("<C20a>" + clacount + "; invars.count = " + variableStates.getInVarCount());
-            output.println_cla("<C20a>" + clacount + "; j0 = " + j0 + " j = " + j);
+        @Override
+        protected void compute() {
+            if ((long) (to - from) * numSlots <= MIN_TASK_WORK || to - from < 2) {
+                Mi.multiplyRange(numSlots, from, to, bbarIn, alphaIn, muIn, betaIn);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new InProducts(from, mid), new InProducts(mid, to));
+            }
+        }
+    }
 
-            sum = 0;
-            for (k0 = 0; k0 < variableStates.getInVarCount(); k0++) {
-                k = variableStates.getInVar(k0);
+    /**
+     * Step C12 in parallel: scans the OUT variables from .. to - 1 and merges the halves in order.
+     */
+    @SuppressWarnings("serial")
+    private final class OutScan extends RecursiveTask<Candidate> {
+        private final States variableStates;
+        private final Workspace work;
+        private final int from, to;
+        private final int clacount;
+
+        OutScan(States variableStates, Workspace work, int from, int to, int clacount) {
+            this.variableStates = variableStates;
+            this.work = work;
+            this.from = from;
+            this.to = to;
+            this.clacount = clacount;
+        }
 
-                output.println_cla("<C20b>" + clacount + "; k0 = " + k0 + " k = " + k);
+        @Override
+        protected Candidate compute() {
+            long rowWork = work.getNumConstraints() + 1;
 
-                sum += Mi[j][k] * inputVars.mMat[k][jAdd];
+            if ((to - from) * rowWork <= MIN_TASK_WORK || to - from < 2) {
+                return scanOut(variableStates, work, from, to, clacount);
             }
-            xi[j] = sum;
+            int mid = (from + to) >>> 1;
+            OutScan later = new OutScan(variableStates, work, mid, to, clacount);
+            later.fork();
+            Candidate first = new OutScan(variableStates, work, from, mid, clacount).compute();
+            return first.merge(later.join());
         }
+    }
 
-        xij = inputVars.mMat[jAdd][jAdd];
+    /**
+     * Full recompute of covAlpha and covBeta in parallel, for the securities from .. to - 1 of a
+     * dense covariance.
+     */
+    @SuppressWarnings("serial")
+    private final class RowProducts extends RecursiveAction {
+        private final Covariance cov;
+        private final int from, to;
+
+        RowProducts(Covariance cov, int from, int to) {
+            this.cov = cov;
+            this.from = from;
+            this.to = to;
+        }
 
-        for (k0 = 0; k0 < variableStates.getInVarCount(); k0++) {
-            k = variableStates.getInVar(k0);
+        @Override
+        protected void compute() {
+            if ((long) (to - from) * cov.size() <= MIN_TASK_WORK || to - from < 2) {
+                cov.multiplyRows(allSecurities, from, to, alphav, covAlpha, betav, covBeta);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RowProducts(cov, from, mid), new RowProducts(cov, mid, to));
+            }
+        }
+    }
 
-            output.println_cla("<C20c>" + clacount + "; k0 = " + k0 + " k = " + k);
+    /**
+     * Do updates required for variable jAdd to come IN.
+     */
+    void addVariable(States variableStates, Workspace work, OptimizerVariables optimizerVars, int jAdd, Direction direction, int clacount) {
+        int j0, j;
+        double sum, xij;
 
-            xij -= inputVars.mMat[jAdd][k] * xi[k];
+        if (debugEnabled) {
+            output.println_cla("<addvar>" + clacount + "; var = " + jAdd + " direction = " + direction);
         }
 
-        // Mi(IN,IN) += Xi*xi.T/xij
-        // Mi(jAdd,IN) = Mi(IN,jAdd) = -xi / xij
-        // for (j0 = 1; j0 <= variableStates.getInVarCount(); j0++) {
-        for (j0 = 0; j0 < variableStates.getInVarCount(); j0++) {
-            j = variableStates.getInVar(j0);
-
-            output.println_cla("<C20d>" + clacount + "; j0 = " + j0 + " j = " + j);
+        // <C20> update Mi for variable coming IN.
+        // xi = Mi(IN,IN) * M(IN,jAdd), kept in slot order like Mi.
+        double[] mIn = bbarIn;
 
-            for (k0 = 0; k0 <= j0 - 1; k0++) {
-                k = variableStates.getInVar(k0);
+        for (int s = 0; s < numSlots; s++) {
+            mIn[s] = work.getM(slotVar[s], jAdd);
+        }
+        Mi.multiply(numSlots, mIn, xi);
 
-                output.println_cla("<C20e>" + clacount + "; k0 = " + k0 + " k = " + k);
+        xij = work.getM(jAdd, jAdd) - Kernels.get().dot(mIn, 0, xi, 0, numSlots);
 
-                Mi[j][k] += xi[j] * xi[k] / xij;
-                Mi[k][j] = Mi[j][k];
-            }
-            Mi[j][j] += xi[j] * xi[j] / xij;
-            Mi[j][jAdd] = -xi[j] / xij;
-            Mi[jAdd][j] = Mi[j][jAdd];
+        if (traceEnabled) {
+            output.println_cla("<C20>" + clacount + "; in = " + numSlots + " xij = " + xij);
         }
-        Mi[jAdd][jAdd] = 1.0 / xij;
 
         // <C21> Update bbar for the current IN variables
-        for (j0 = 0; j0 < variableStates.getInVarCount(); j0++) {
-            j = variableStates.getInVar(j0);
+        for (int s = 0; s < numSlots; s++) {
+            bbar[slotVar[s]] += mIn[s] * optimizerVars.portfolioWeights[jAdd];
+        }
+
+        // Mi(IN,IN) += xi*xi.T/xij
+        // Mi(jAdd,IN) = Mi(IN,jAdd) = -xi / xij
+        Mi.rankOneUpdate(numSlots, xi, xij);
 
-            output.println_cla("<C21>" + clacount + "; j0 = " + j0 + " j = " + j);
+        int sAdd = addSlot(jAdd);
+        double[] mi = Mi.data();
+        int row = SymmetricMatrix.rowOffset(sAdd);
 
-            bbar[j] += inputVars.mMat[j][jAdd] * optimizerVars.portfolioWeights[jAdd];
+        for (int s = 0; s < sAdd; s++) {
+            mi[row + s] = -xi[s] / xij;
         }
+        mi[row + sAdd] = 1.0 / xij;
 
         variableStates.goIn(jAdd);      // Variable jAdd goes IN
 
         // <C22> Compute bbar for new IN variable.
         sum = 0;
+        int numOut = variableStates.getOutVarCount();
+        int[] outVars = variableStates.getOutVars();
 
-        for (j0 = 0; j0 < variableStates.getOutVarCount(); j0++) {
-            j = variableStates.getOutVar(j0);
+        for (j0 = 0; j0 < numOut; j0++) {
+            j = outVars[j0];
 
-            output.println_cla("<C22>" + clacount + "; j0 = " + j0 + " j = " + j);
+            if (traceEnabled) {
+                output.println_cla("<C22>" + clacount + "; j0 = " + j0 + " j = " + j);
+            }
 
-            sum -= inputVars.mMat[jAdd][j] * optimizerVars.portfolioWeights[j];
+            sum -= work.getM(jAdd, j) * optimizerVars.portfolioWeights[j];
         }
         bbar[jAdd] = sum;
+
+        // <C23> Update alpha and beta from the block inverse: with
+        // alpha(jAdd) = (bbar(jAdd) - xi * bbar(IN)) / xij the others change by
+        // xi * (weight(jAdd) - alpha(jAdd)), likewise for beta with mu and weight 0.
+        double xiBbar = Kernels.get().gatheredDot(xi, slotVar, bbar, sAdd);
+        double xiMu = 0;
+
+        for (int s = 0; s < sAdd; s++) {
+            xiMu += xi[s] * expectedReturn(work, slotVar[s]);
+        }
+        double alphaAdd = (bbar[jAdd] - xiBbar) / xij;
+        double betaAdd = (expectedReturn(work, jAdd) - xiMu) / xij;
+        double alphaStep = optimizerVars.portfolioWeights[jAdd] - alphaAdd;
+
+        for (int s = 0; s < sAdd; s++) {
+            j = slotVar[s];
+            alphav[j] += xi[s] * alphaStep;
+            betav[j] -= xi[s] * betaAdd;
+        }
+        alphav[jAdd] = alphaAdd;
+        betav[jAdd] = betaAdd;
     }
 
     /**
      * Do updates required for variable jDel to go OUT.
      */
-    private void deleteVariable(States variableStates,
-                                InputVariables inputVars,
+    void deleteVariable(States variableStates,
+                                Workspace work,
                                 OptimizerVariables optimizerVars,
                                 int jDel, Direction direction,
                                 int clacount) {
-        int j0, j, k0, k;
+        int j0, j;
 
-        output.println_cla("<delvar>" + clacount + "; var = " + jDel + " direction = " + direction);
+        if (debugEnabled) {
+            output.println_cla("<delvar>" + clacount + "; var = " + jDel + " direction = " + direction);
+        }
 
         // <C30> update alpha and beta vectors for variable going OUT
+        double alphaDel = alphav[jDel];
+        double betaDel = betav[jDel];
         alphav[jDel] = optimizerVars.portfolioWeights[jDel];
         betav[jDel] = 0;
-        variableStates.goOut(jDel, direction, inputVars);   // <C31> variable jDel goes OUT
+        variableStates.goOut(jDel, direction, work);   // <C31> variable jDel goes OUT
 
         // <C32> Update Mi and bbar for variable going OUT.
-        for (j0 = 0; j0 < variableStates.getInVarCount(); j0++) {
-            j = variableStates.getInVar(j0);
+        // Mi(IN,IN) -= Mi(IN,jDel) * Mi(jDel,IN) / Mi(jDel,jDel), then the slot of jDel is freed.
+        int sDel = slot[jDel];
+        Mi.column(numSlots, sDel, xi);
+        double miDel = xi[sDel];
 
-            output.println_cla("<C32>" + clacount + "; j0 = " + j0 + " j = " + j);
+        if (traceEnabled) {
+            output.println_cla("<C32>" + clacount + "; in = " + numSlots + " miDel = " + miDel);
+        }
 
-            for (k0 = 0; k0 < variableStates.getInVarCount(); k0++) {
-                k = variableStates.getInVar(k0);
+        Mi.rankOneUpdate(numSlots, xi, -miDel);
 
-                output.println_cla("<C32>" + clacount + "; k0 = " + k0 + " k = " + k);
+        // The IN variables move along column jDel of Mi until jDel is at its limit.
+        double alphaStep = (optimizerVars.portfolioWeights[jDel] - alphaDel) / miDel;
+        double betaStep = -betaDel / miDel;
 
-                Mi[j][k] -= Mi[j][jDel] * Mi[jDel][k] / Mi[jDel][jDel];
+        for (int s = 0; s < numSlots; s++) {
+            if (s != sDel) {
+                alphav[slotVar[s]] += xi[s] * alphaStep;
+                betav[slotVar[s]] += xi[s] * betaStep;
             }
         }
+        removeSlot(jDel);
 
         // <C33> Update bbar(IN)
-        for (j0 = 0; j0 < variableStates.getInVarCount(); j0++) {
-            j = variableStates.getInVar(j0);
+        int numIn = variableStates.getInVarCount();
+        int[] inVars = variableStates.getInVars();
+        for (j0 = 0; j0 < numIn; j0++) {
+            j = inVars[j0];
+
+            if (traceEnabled) {
+                output.println_cla("<C33>" + clacount + "; j0 = " + j0 + " j = " + j);
+            }
+
+            bbar[j] -= work.getM(j, jDel) * optimizerVars.portfolioWeights[jDel];
+        }
+    }
+
+    /**
+     * Expected return of variable j, 0 for the lambda variables.
+     */
+    private static double expectedReturn(Workspace work, int j) {
+        return j < work.getNumVariables() ? work.getExpectedReturn(j) : 0.0;
+    }
+
+    /**
+     * Assign the next free slot of Mi to variable j, growing Mi if it is full.
+     *
+     * @return The slot of j.
+     */
+    private int addSlot(int j) {
+        if (numSlots == Mi.size()) {
+            resize(Math.min(2 * Mi.size(), slot.length));
+        }
+        int s = numSlots++;
+        slot[j] = s;
+        slotVar[s] = j;
+        return s;
+    }
 
-            output.println_cla("<C33>" + clacount + "; j0 = " + j0 + " j = " + j);
+    /**
+     * Free the slot of variable j. The last slot is moved into the gap, and Mi is shrunk when it
+     * is less than a quarter full.
+     */
+    private void removeSlot(int j) {
+        int s = slot[j];
+        int last = --numSlots;
+
+        if (s != last) {
+            Mi.copyRowAndColumn(numSlots, s, last);
+            slotVar[s] = slotVar[last];
+            slot[slotVar[s]] = s;
+        }
+        slot[j] = -1;
 
-            bbar[j] -= inputVars.mMat[j][jDel] * optimizerVars.portfolioWeights[jDel];
+        if (numSlots < Mi.size() / 4 && Mi.size() / 2 >= minCapacity) {
+            resize(Mi.size() / 2);
         }
     }
 
+    private void resize(int capacity) {
+        Mi = Utility.redim(Mi, capacity);
+        slotVar = Utility.redim(slotVar, capacity);
+        xi = Utility.redim(xi, capacity);
+        bbarIn = new double[capacity];
+        muIn = new double[capacity];
+        alphaIn = new double[capacity];
+        betaIn = new double[capacity];
+    }
+
     /**
      * Calculate the new corner portfolio and statistics.
      */
     private void calcCornerPortfolio(States variableStates,
-                                     InputVariables inputVars,
+                                     Workspace work,
                                      OptimizerVariables optimizerVars,
                                      int clacount) {
         int j, j0, k;
 
         // <C40> Calculate the new corner portfolio.
-        for (j0 = 0; j0 < variableStates.getInVarCount() - inputVars.getNumConstraints(); j0++) {
+        for (j0 = 0; j0 < variableStates.getInVarCount() - work.getNumConstraints(); j0++) {
             j = variableStates.getInVar(j0);
 
-            output.println_cla("<C40>" + clacount + "; j0 = " + j0 + " j = " + j);
+            if (traceEnabled) {
+                output.println_cla("<C40>" + clacount + "; j0 = " + j0 + " j = " + j);
+            }
 
             optimizerVars.portfolioWeights[j] = alphav[j] + betav[j] * optimizerVars.lambdaE;
         }
@@ -414,12 +884,14 @@ public class CriticalLines {
         // <C41> Calculate dE_dLambda
         double dE_dLambdaE = 0;
 
-        for (j0 = 0; j0 < variableStates.getInVarCount() - inputVars.getNumConstraints(); j0++) {
+        for (j0 = 0; j0 < variableStates.getInVarCount() - work.getNumConstraints(); j0++) {
             j = variableStates.getInVar(j0);
 
-            output.println_cla("<C41>" + clacount + "; j0 = " + j0 + " j = " + j);
+            if (traceEnabled) {
+                output.println_cla("<C41>" + clacount + "; j0 = " + j0 + " j = " + j);
+            }
 
-            dE_dLambdaE += betav[j] * inputVars.getExpectedReturn(j);
+            dE_dLambdaE += betav[j] * work.getExpectedReturn(j);
         }
 
         if (dE_dLambdaE < 0.000000001) {
@@ -428,16 +900,11 @@ public class CriticalLines {
             optimizerVars.a1 = Optimizer.INVALID;
             optimizerVars.a2 = Optimizer.INVALID;
             optimizerVars.portfolioExpectedReturn = 0;
-            optimizerVars.portfolioVariance = 0;
 
-            for (j = 0; j < inputVars.getNumSecurities(); j++) {
-                optimizerVars.portfolioExpectedReturn += inputVars.getExpectedReturn(j) * optimizerVars.portfolioWeights[j];
-                optimizerVars.portfolioVariance += inputVars.mMat[j][j] * optimizerVars.portfolioWeights[j] * optimizerVars.portfolioWeights[j];
-
-                for (k = 0; k <= j - 1; k++) {
-                    optimizerVars.portfolioVariance += 2 * inputVars.mMat[j][k] * optimizerVars.portfolioWeights[j] * optimizerVars.portfolioWeights[k];
-                }
+            for (j = 0; j < work.getNumSecurities(); j++) {
+                optimizerVars.portfolioExpectedReturn += work.getExpectedReturn(j) * optimizerVars.portfolioWeights[j];
             }
+            optimizerVars.portfolioVariance = work.getProblem().covariance().quadraticForm(optimizerVars.portfolioWeights);
         } else {
             // <C43> compute a0, al, a2, E, and V.
             optimizerVars.a2 = 1.0 / dE_dLambdaE;
@@ -450,7 +917,9 @@ public class CriticalLines {
     }
 
     public void dumpStates() {
-        output.dumpVector("alphav   ", alphav);
-        output.dumpVector("betav    ", betav);
+        if (debugEnabled) {
+            output.dumpVector("alphav   ", alphav);
+            output.dumpVector("betav    ", betav);
+        }
     }
 }
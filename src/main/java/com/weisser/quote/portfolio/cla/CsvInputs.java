@@ -0,0 +1,77 @@
+package com.weisser.quote.portfolio.cla;
+
+import com.weisser.quote.util.CsvReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads problem data from CSV files written by risk systems or by
+ * {@link com.weisser.quote.util.CsvWriter}. The files are read record by record and the values
+ * are stored where the optimizer needs them, without building the matrices as text or as
+ * double[][] first.
+ */
+public final class CsvInputs {
+
+    private CsvInputs() {
+    }
+
+    /**
+     * Reads the covariance matrix straight into the covariance matrix of the input variables.
+     * Record i holds row i of the matrix: either all numSecurities values or only the lower
+     * triangle, i.e. the first i + 1 values. Only the lower triangle is read. A header record
+     * must be skipped by the caller with {@link CsvReader#next()}.
+     *
+     * @param in The reader, positioned before the first row.
+     * @param inputVars Input variables after init().
+     * @throws IOException If the file cannot be read or has fewer rows or values than needed.
+     */
+    public static void readCovariance(CsvReader in, InputVariables inputVars) throws IOException {
+        int n = inputVars.getNumSecurities();
+        double[] data = inputVars.getCovarianceMatrix().data();
+
+        for (int i = 0; i < n; i++) {
+            if (!in.next()) {
+                throw new IOException("readCovariance: " + n + " rows expected, found " + i);
+            }
+            if (in.size() != i + 1 && in.size() != n) {
+                throw new IOException("readCovariance: row " + i + " has " + in.size() + " values, expected "
+                        + (i + 1) + " or " + n);
+            }
+            int row = SymmetricMatrix.rowOffset(i);
+            for (int j = 0; j <= i; j++) {
+                data[row + j] = in.getDouble(j);
+            }
+        }
+    }
+
+    /**
+     * Reads a returns file, one record per observation, e.g. for a {@link CovarianceBuilder} or
+     * a {@link CovarianceEstimator}. The number of securities is taken from the first record. A
+     * header record must be skipped by the caller with {@link CsvReader#next()}.
+     *
+     * @param in The reader, positioned before the first observation.
+     * @param firstField The field of the first security, e.g. 1 after a date column.
+     * @return One row of returns per observation, oldest first as in the file.
+     * @throws IOException If the file cannot be read or the records differ in length.
+     */
+    public static double[][] readReturns(CsvReader in, int firstField) throws IOException {
+        List<double[]> rows = new ArrayList<double[]>();
+        int n = -1;
+
+        while (in.next()) {
+            if (n < 0) {
+                n = in.size() - firstField;
+            }
+            if (in.size() - firstField != n) {
+                throw new IOException("readReturns: record " + in.getRecordNumber() + " has "
+                        + (in.size() - firstField) + " returns, expected " + n);
+            }
+            double[] r = new double[n];
+            in.getDoubles(r, firstField);
+            rows.add(r);
+        }
+        return rows.toArray(new double[rows.size()][]);
+    }
+}
@@ -0,0 +1,389 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.util.Arrays;
+
+/**
+ * The corner portfolios of an efficient frontier, as computed by {@link Optimizer#optimize()}.
+ *
+ * All values are held in primitive arrays indexed by corner number, starting with 0 for the
+ * first corner portfolio (the one with the highest expected return). The weights of all corners
+ * are stored in one array, row by row. Instances are immutable.
+ */
+public final class EfficientFrontier {
+    private final int numCorners;
+    private final int numSecurities;
+    private final double[] lambdaE;
+    private final double[] expectedReturn;
+    private final double[] variance;
+    private final double[] a0, a1, a2;
+    private final double[] weights;
+    private final SimplexPhaseResult simplexResult;
+    private final SimplexWarmStart warmStart;
+    private final SolverMetrics metrics;
+
+    private EfficientFrontier(Builder b) {
+        this.numCorners = b.numCorners;
+        this.numSecurities = b.numSecurities;
+        this.lambdaE = Utility.redim(b.lambdaE, numCorners);
+        this.expectedReturn = Utility.redim(b.expectedReturn, numCorners);
+        this.variance = Utility.redim(b.variance, numCorners);
+        this.a0 = Utility.redim(b.a0, numCorners);
+        this.a1 = Utility.redim(b.a1, numCorners);
+        this.a2 = Utility.redim(b.a2, numCorners);
+        this.weights = Utility.redim(b.weights, numCorners * numSecurities);
+        this.simplexResult = b.simplexResult;
+        this.warmStart = b.warmStart;
+        this.metrics = b.metrics;
+    }
+
+    /**
+     * Returns the number of corner portfolios.
+     *
+     * @return The number of corner portfolios, 0 if the optimization failed.
+     */
+    public int size() {
+        return numCorners;
+    }
+
+    /**
+     * Returns the result of the simplex algorithm that found the first corner portfolio.
+     *
+     * @return OK, or the reason why the frontier is empty.
+     */
+    public SimplexPhaseResult getSimplexResult() {
+        return simplexResult;
+    }
+
+    /**
+     * Returns the partition of the first corner portfolio, to seed the simplex of the next run of
+     * a similar problem with {@link Optimizer#optimize(SimplexWarmStart)}.
+     *
+     * @return The simplex warm start, or null if the simplex failed or the problem was degenerate.
+     */
+    public SimplexWarmStart getSimplexWarmStart() {
+        return warmStart;
+    }
+
+    /**
+     * Returns the counters and timings of the run.
+     *
+     * @return The metrics, or null if they were not enabled, see
+     *         {@link Optimizer#setMetricsEnabled(boolean)}.
+     */
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the number of securities, i.e. the number of weights per corner portfolio.
+     *
+     * @return The number of securities.
+     */
+    public int getNumSecurities() {
+        return numSecurities;
+    }
+
+    public double getLambdaE(int corner) {
+        return lambdaE[corner];
+    }
+
+    public double getExpectedReturn(int corner) {
+        return expectedReturn[corner];
+    }
+
+    public double getVariance(int corner) {
+        return variance[corner];
+    }
+
+    public double getStandardDeviation(int corner) {
+        return Math.sqrt(variance[corner]);
+    }
+
+    /**
+     * Coefficient a0 of V = a0 + a1 * E + a2 * E^2 on the segment between this corner and the
+     * previous one.
+     *
+     * @param corner The corner portfolio.
+     * @return a0, or NaN if the curve has a kink at this corner.
+     */
+    public double getA0(int corner) {
+        return a0[corner];
+    }
+
+    /**
+     * Coefficient a1, see {@link #getA0(int)}.
+     */
+    public double getA1(int corner) {
+        return a1[corner];
+    }
+
+    /**
+     * Coefficient a2, see {@link #getA0(int)}.
+     */
+    public double getA2(int corner) {
+        return a2[corner];
+    }
+
+    public double getWeight(int corner, int security) {
+        return weights[corner * numSecurities + security];
+    }
+
+    /**
+     * Returns a copy of the weights of one corner portfolio.
+     *
+     * @param corner The corner portfolio.
+     * @return The weights, one per security.
+     */
+    public double[] getWeights(int corner) {
+        double[] w = new double[numSecurities];
+        System.arraycopy(weights, corner * numSecurities, w, 0, numSecurities);
+        return w;
+    }
+
+    /*
+     * Queries. Between two corner portfolios c-1 and c the weights, E and lambdaE are linear in
+     * each other, and V = a0 + a1 * E + a2 * E^2 with the coefficients stored at corner c. A
+     * query therefore finds the segment by binary search (E, V and lambdaE all decrease with the
+     * corner number) and interpolates. With t running from 0 at corner c to 1 at corner c-1, the
+     * parabola is evaluated as V = V[c] + t * (V[c-1] - V[c]) - q * t * (1 - t), where
+     * q = a2 * (E[c-1] - E[c])^2. This avoids the cancellation in a0 + a1 * E + a2 * E^2.
+     */
+
+    /**
+     * Returns the efficient portfolios with the given expected returns.
+     *
+     * @param targets Expected returns. Targets above the first or below the last corner
+     *        portfolio give undefined points.
+     * @return One point per target.
+     */
+    public FrontierPoints atExpectedReturn(double... targets) {
+        FrontierPoints points = new FrontierPoints(targets.length, numSecurities);
+
+        for (int i = 0; i < targets.length; i++) {
+            int c = findSegment(expectedReturn, targets[i]);
+            interpolate(points, i, c, c < 0 ? 0 : fraction(expectedReturn, c, targets[i]));
+        }
+        return points;
+    }
+
+    /**
+     * Returns the efficient portfolios with the given standard deviations.
+     *
+     * @param targets Standard deviations. Targets above the first or below the last corner
+     *        portfolio give undefined points.
+     * @return One point per target.
+     */
+    public FrontierPoints atStandardDeviation(double... targets) {
+        FrontierPoints points = new FrontierPoints(targets.length, numSecurities);
+
+        for (int i = 0; i < targets.length; i++) {
+            double v = targets[i] * targets[i];
+            int c = findSegment(variance, v);
+            double t = 0;
+
+            if (c > 0) {
+                // Root in [0, 1] of q * t^2 + b * t - (v - V[c]) = 0, written in the form that
+                // is stable for b >= 0 and q -> 0.
+                double q = curvature(c);
+                double b = variance[c - 1] - variance[c] - q;
+                double r = v - variance[c];
+                double d = b + Math.sqrt(Math.max(b * b + 4 * q * r, 0));
+                t = d > 0 ? Math.min(2 * r / d, 1) : 0;
+            }
+            interpolate(points, i, c, t);
+        }
+        return points;
+    }
+
+    /**
+     * Returns the efficient portfolios for the given values of lambdaE. Values above the
+     * lambdaE of the first corner portfolio give that portfolio.
+     *
+     * @param targets Values of lambdaE. Targets below the last corner portfolio give undefined
+     *        points.
+     * @return One point per target.
+     */
+    public FrontierPoints atLambdaE(double... targets) {
+        FrontierPoints points = new FrontierPoints(targets.length, numSecurities);
+
+        for (int i = 0; i < targets.length; i++) {
+            double lambda = numCorners > 0 ? Math.min(targets[i], lambdaE[0]) : targets[i];
+            int c = findSegment(lambdaE, lambda);
+            interpolate(points, i, c, c < 0 ? 0 : fraction(lambdaE, c, lambda));
+        }
+        return points;
+    }
+
+    /**
+     * Returns numPoints efficient portfolios with evenly spaced expected returns, from the first
+     * to the last corner portfolio.
+     *
+     * @param numPoints The number of points.
+     * @return The points.
+     */
+    public FrontierPoints evenlySpaced(int numPoints) {
+        double[] targets = new double[numPoints];
+
+        if (numCorners > 0) {
+            double high = expectedReturn[0];
+            double low = expectedReturn[numCorners - 1];
+
+            for (int i = 0; i < numPoints; i++) {
+                targets[i] = numPoints > 1 ? high + (low - high) * i / (numPoints - 1) : high;
+            }
+            // Avoid rounding past the last corner.
+            if (numPoints > 1) {
+                targets[numPoints - 1] = low;
+            }
+        }
+        return atExpectedReturn(targets);
+    }
+
+    /**
+     * Binary search in a per-corner value that does not increase with the corner number.
+     *
+     * @return The first corner c with values[c] <= x, so that x lies between corner c and c-1,
+     *         or -1 if x is outside the frontier.
+     */
+    private int findSegment(double[] values, double x) {
+        if (numCorners == 0 || !(x <= values[0] && x >= values[numCorners - 1])) {
+            return -1;
+        }
+        int lo = 0;
+        int hi = numCorners - 1;
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] <= x) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Position of x between corner c (0) and corner c-1 (1).
+     */
+    private static double fraction(double[] values, int c, double x) {
+        if (c == 0) {
+            return 0;
+        }
+        double range = values[c - 1] - values[c];
+        return range > 0 ? (x - values[c]) / range : 0;
+    }
+
+    /**
+     * q = a2 * (E[c-1] - E[c])^2 for the segment ending at corner c, 0 at a kink.
+     */
+    private double curvature(int c) {
+        if (c == 0 || Double.isNaN(a2[c])) {
+            return 0;
+        }
+        double range = expectedReturn[c - 1] - expectedReturn[c];
+        return a2[c] * range * range;
+    }
+
+    /**
+     * Fill point i with the portfolio at position t between corner c and corner c-1.
+     */
+    private void interpolate(FrontierPoints points, int i, int c, double t) {
+        int row = i * numSecurities;
+
+        if (c < 0) {
+            points.lambdaE[i] = Double.NaN;
+            points.expectedReturn[i] = Double.NaN;
+            points.variance[i] = Double.NaN;
+            Arrays.fill(points.weights, row, row + numSecurities, Double.NaN);
+            return;
+        }
+        int p = c > 0 ? c - 1 : 0;
+        double e = expectedReturn[c] + t * (expectedReturn[p] - expectedReturn[c]);
+
+        points.lambdaE[i] = lambdaE[c] + t * (lambdaE[p] - lambdaE[c]);
+        points.expectedReturn[i] = e;
+
+        points.variance[i] = variance[c] + t * (variance[p] - variance[c]) - curvature(c) * t * (1 - t);
+
+        int wc = c * numSecurities;
+        int wp = p * numSecurities;
+
+        for (int j = 0; j < numSecurities; j++) {
+            points.weights[row + j] = weights[wc + j] + t * (weights[wp + j] - weights[wc + j]);
+        }
+    }
+
+    /**
+     * Collects the corner portfolios while the critical line algorithm runs.
+     */
+    static final class Builder {
+        private final int numSecurities;
+        private int numCorners;
+        private double[] lambdaE, expectedReturn, variance, a0, a1, a2;
+        private double[] weights;
+        private SimplexPhaseResult simplexResult = SimplexPhaseResult.OK;
+        private SimplexWarmStart warmStart;
+        private SolverMetrics metrics;
+
+        Builder(int numSecurities) {
+            this.numSecurities = numSecurities;
+            int capacity = 16;
+            lambdaE = new double[capacity];
+            expectedReturn = new double[capacity];
+            variance = new double[capacity];
+            a0 = new double[capacity];
+            a1 = new double[capacity];
+            a2 = new double[capacity];
+            weights = new double[capacity * numSecurities];
+        }
+
+        /**
+         * Appends the current corner portfolio.
+         */
+        void add(OptimizerVariables optimizerVars) {
+            if (numCorners == lambdaE.length) {
+                int capacity = 2 * numCorners;
+                lambdaE = Utility.redim(lambdaE, capacity);
+                expectedReturn = Utility.redim(expectedReturn, capacity);
+                variance = Utility.redim(variance, capacity);
+                a0 = Utility.redim(a0, capacity);
+                a1 = Utility.redim(a1, capacity);
+                a2 = Utility.redim(a2, capacity);
+                weights = Utility.redim(weights, capacity * numSecurities);
+            }
+
+            int c = numCorners++;
+            lambdaE[c] = optimizerVars.lambdaE;
+            expectedReturn[c] = optimizerVars.portfolioExpectedReturn;
+            variance[c] = optimizerVars.portfolioVariance;
+
+            if (optimizerVars.a0 != Optimizer.INVALID) {
+                a0[c] = optimizerVars.a0;
+                a1[c] = optimizerVars.a1;
+                a2[c] = optimizerVars.a2;
+            } else {
+                a0[c] = Double.NaN;
+                a1[c] = Double.NaN;
+                a2[c] = Double.NaN;
+            }
+            System.arraycopy(optimizerVars.portfolioWeights, 0, weights, c * numSecurities, numSecurities);
+        }
+
+        void setSimplexResult(SimplexPhaseResult simplexResult) {
+            this.simplexResult = simplexResult;
+        }
+
+        void setSimplexWarmStart(SimplexWarmStart warmStart) {
+            this.warmStart = warmStart;
+        }
+
+        void setMetrics(SolverMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        EfficientFrontier build() {
+            return new EfficientFrontier(this);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * The {@link SolverEvents} implementation registered for the {@link ServiceLoader}, if any.
+ * Callers check {@link #SINK} for null; as it is a constant, the check costs nothing without an
+ * implementation.
+ */
+final class Events {
+
+    /**
+     * The first implementation that could be loaded, or null.
+     */
+    static final SolverEvents SINK = load();
+
+    private Events() {
+    }
+
+    private static SolverEvents load() {
+        Iterator<SolverEvents> it = ServiceLoader.load(SolverEvents.class).iterator();
+        while (true) {
+            try {
+                if (!it.hasNext()) {
+                    return null;
+                }
+                return it.next();
+            } catch (ServiceConfigurationError e) {
+                System.err.println("Events: skipping an implementation: " + e.getMessage());
+            } catch (LinkageError e) {
+                System.err.println("Events: skipping an implementation: " + e);
+            }
+        }
+    }
+}
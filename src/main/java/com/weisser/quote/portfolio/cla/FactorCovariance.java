@@ -0,0 +1,197 @@
+package com.weisser.quote.portfolio.cla;
+
+/**
+ * Covariance matrix of a factor risk model, C = B * F * B' + D, with n securities and k
+ * factors: B holds the factor loadings (n x k), F the factor covariance (k x k) and D the
+ * specific variances (diagonal).
+ *
+ * The n x n matrix is never formed. Memory is O(n * k), a single element costs O(k) and the
+ * products of {@link #multiplyRows} cost O(n * k + k^2) for the common part plus O(k) per row.
+ * Instances are immutable.
+ */
+public final class FactorCovariance implements Covariance {
+    private final int size;
+    private final int numFactors;
+
+    /**
+     * Factor loadings B, n rows and k columns.
+     */
+    private final Matrix loadings;
+
+    /**
+     * Factor covariance F.
+     */
+    private final SymmetricMatrix factorCovariance;
+
+    /**
+     * G = B * F, n rows and k columns, so that C(i, j) = G(i,ALL) * B(j,ALL)' + D(i) [i = j].
+     */
+    private final Matrix loadingsTimesF;
+
+    /**
+     * Specific variances D.
+     */
+    private final double[] specificVariance;
+
+    /**
+     * Creates a factor model. The arrays are copied.
+     *
+     * @param loadings Factor loadings B, one row of k loadings per security.
+     * @param factorCovariance Factor covariance F, k x k (only the lower triangle is read).
+     * @param specificVariance Specific variance of each security.
+     */
+    public FactorCovariance(double[][] loadings, double[][] factorCovariance, double[] specificVariance) {
+        this.size = loadings.length;
+        this.numFactors = factorCovariance.length;
+
+        if (specificVariance.length != size) {
+            throw new IllegalArgumentException("FactorCovariance: loadings (" + size + ") and specificVariance ("
+                    + specificVariance.length + ") mismatch");
+        }
+
+        this.loadings = new Matrix(size, numFactors);
+        for (int i = 0; i < size; i++) {
+            if (loadings[i].length != numFactors) {
+                throw new IllegalArgumentException("FactorCovariance: row " + i + " of loadings has "
+                        + loadings[i].length + " factors, expected " + numFactors);
+            }
+            System.arraycopy(loadings[i], 0, this.loadings.data(), this.loadings.rowOffset(i), numFactors);
+        }
+
+        this.factorCovariance = new SymmetricMatrix(numFactors);
+        for (int f = 0; f < numFactors; f++) {
+            for (int g = 0; g <= f; g++) {
+                this.factorCovariance.set(f, g, factorCovariance[f][g]);
+            }
+        }
+
+        this.specificVariance = specificVariance.clone();
+
+        this.loadingsTimesF = new Matrix(size, numFactors);
+        double[] b = this.loadings.data();
+        double[] gData = loadingsTimesF.data();
+        for (int i = 0; i < size; i++) {
+            int row = i * numFactors;
+            for (int f = 0; f < numFactors; f++) {
+                double sum = 0;
+                for (int g = 0; g < numFactors; g++) {
+                    sum += b[row + g] * this.factorCovariance.get(g, f);
+                }
+                gData[row + f] = sum;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int getNumFactors() {
+        return numFactors;
+    }
+
+    @Override
+    public double get(int i, int j) {
+        double[] g = loadingsTimesF.data();
+        double[] b = loadings.data();
+        int rowI = i * numFactors;
+        int rowJ = j * numFactors;
+        double sum = (i == j) ? specificVariance[i] : 0.0;
+
+        for (int f = 0; f < numFactors; f++) {
+            sum += g[rowI + f] * b[rowJ + f];
+        }
+        return sum;
+    }
+
+    /**
+     * C(j,ALL) * x = G(j,ALL) * (B' * x) + D(j) * x(j). B' * x1 and B' * x2 are computed once for
+     * all rows of the range, so a range should not be split up further than necessary.
+     */
+    @Override
+    public void multiplyRows(int[] rows, int from, int to, double[] x1, double[] y1, double[] x2, double[] y2) {
+        double[] b = loadings.data();
+        double[] g = loadingsTimesF.data();
+        double[] t1 = new double[numFactors];
+        double[] t2 = new double[numFactors];
+
+        for (int i = 0; i < size; i++) {
+            int row = i * numFactors;
+            double x1i = x1[i];
+            double x2i = x2[i];
+            for (int f = 0; f < numFactors; f++) {
+                t1[f] += b[row + f] * x1i;
+                t2[f] += b[row + f] * x2i;
+            }
+        }
+
+        for (int r = from; r < to; r++) {
+            int j = rows[r];
+            int row = j * numFactors;
+            double sum1 = specificVariance[j] * x1[j];
+            double sum2 = specificVariance[j] * x2[j];
+            for (int f = 0; f < numFactors; f++) {
+                sum1 += g[row + f] * t1[f];
+                sum2 += g[row + f] * t2[f];
+            }
+            y1[j] = sum1;
+            y2[j] = sum2;
+        }
+    }
+
+    /**
+     * C * x = G * (B' * x) + D * x, where B' * x only needs the given columns of B'.
+     */
+    @Override
+    public void multiplyColumns(int[] cols, int from, int to, double[] x1, double[] y1, double[] x2, double[] y2) {
+        double[] b = loadings.data();
+        double[] g = loadingsTimesF.data();
+        double[] t1 = new double[numFactors];
+        double[] t2 = new double[numFactors];
+
+        for (int c = from; c < to; c++) {
+            int k = cols[c];
+            int row = k * numFactors;
+            for (int f = 0; f < numFactors; f++) {
+                t1[f] += b[row + f] * x1[k];
+                t2[f] += b[row + f] * x2[k];
+            }
+            y1[k] += specificVariance[k] * x1[k];
+            y2[k] += specificVariance[k] * x2[k];
+        }
+
+        for (int i = 0; i < size; i++) {
+            int row = i * numFactors;
+            double sum1 = 0;
+            double sum2 = 0;
+            for (int f = 0; f < numFactors; f++) {
+                sum1 += g[row + f] * t1[f];
+                sum2 += g[row + f] * t2[f];
+            }
+            y1[i] += sum1;
+            y2[i] += sum2;
+        }
+    }
+
+    @Override
+    public boolean isDense() {
+        return false;
+    }
+
+    @Override
+    public double quadraticForm(double[] x) {
+        double[] b = loadings.data();
+        double[] t = new double[numFactors];
+        double sum = 0;
+
+        for (int i = 0; i < size; i++) {
+            int row = i * numFactors;
+            for (int f = 0; f < numFactors; f++) {
+                t[f] += b[row + f] * x[i];
+            }
+            sum += specificVariance[i] * x[i] * x[i];
+        }
+        return sum + factorCovariance.quadraticForm(t);
+    }
+}
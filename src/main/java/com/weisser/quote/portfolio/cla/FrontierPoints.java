@@ -0,0 +1,84 @@
+package com.weisser.quote.portfolio.cla;
+
+/**
+ * Portfolios on an efficient frontier between its corner portfolios, as returned by the queries of
+ * {@link EfficientFrontier}. Points are numbered in the order of the query targets. A point whose
+ * target lies outside the computed frontier has NaN for all of its values.
+ */
+public final class FrontierPoints {
+    private final int numPoints;
+    private final int numSecurities;
+    final double[] lambdaE;
+    final double[] expectedReturn;
+    final double[] variance;
+    final double[] weights;
+
+    FrontierPoints(int numPoints, int numSecurities) {
+        this.numPoints = numPoints;
+        this.numSecurities = numSecurities;
+        lambdaE = new double[numPoints];
+        expectedReturn = new double[numPoints];
+        variance = new double[numPoints];
+        weights = new double[numPoints * numSecurities];
+    }
+
+    /**
+     * Returns the number of points.
+     *
+     * @return The number of points, equal to the number of query targets.
+     */
+    public int size() {
+        return numPoints;
+    }
+
+    /**
+     * Returns the number of securities, i.e. the number of weights per point.
+     *
+     * @return The number of securities.
+     */
+    public int getNumSecurities() {
+        return numSecurities;
+    }
+
+    /**
+     * Returns true if the target of the point lies on the computed frontier.
+     *
+     * @param point The point.
+     * @return False if the values of the point are NaN.
+     */
+    public boolean isDefined(int point) {
+        return !Double.isNaN(expectedReturn[point]);
+    }
+
+    public double getLambdaE(int point) {
+        return lambdaE[point];
+    }
+
+    public double getExpectedReturn(int point) {
+        return expectedReturn[point];
+    }
+
+    public double getVariance(int point) {
+        return variance[point];
+    }
+
+    public double getStandardDeviation(int point) {
+        return Math.sqrt(variance[point]);
+    }
+
+    public double getWeight(int point, int security) {
+        return weights[point * numSecurities + security];
+    }
+
+    /**
+     * Returns a copy of the weights of one point.
+     *
+     * @param point The point.
+     * @return The weights, one per security.
+     */
+    public double[] getWeights(int point) {
+        double[] w = new double[numSecurities];
+        System.arraycopy(weights, point * numSecurities, w, 0, numSecurities);
+        return w;
+    }
+}
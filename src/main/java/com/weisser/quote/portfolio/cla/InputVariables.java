@@ -64,17 +64,33 @@ public class InputVariables {
     public double[] upperLimits;
 
     /**
-     * M matrix. Size: n+m rows, n+m columns (0..n+m-1)x(0..n+m-1)
+     * Covariance matrix C of the securities. Size: numSecurities rows and columns.
+     * C is symmetric, only the lower triangle is stored. (In the book this is the
+     * upper left part of the M matrix, which {@link Workspace#getM} now provides.)
+     * Allocated on first use, see {@link #getCovarianceMatrix()}; null while a covariance
+     * model is set with {@link #setCovariance(Covariance)}.
      */
-    public double[][] mMat;
+    public SymmetricMatrix mMat;
+
+    /**
+     * Covariance model that replaces mMat, e.g. a {@link FactorCovariance}.
+     */
+    private Covariance covarianceModel;
 
     /**
      * Constraint coefficients matrix. Size: m rows, n+m columns
      * (0..m-1)x(0..n+m-1)
      * (Originally A[][])
+     * Allocated on first use, see {@link #getConstraintMatrix()}; null while a sparse matrix is
+     * set with {@link #setConstraints(SparseMatrix, double[])}.
      */
     public double[][] constraintLHS;
 
+    /**
+     * Sparse constraint coefficients that replace constraintLHS.
+     */
+    private SparseMatrix sparseConstraintLHS;
+
     /**
      * Constraint types array.
      */
@@ -230,27 +246,27 @@ public class InputVariables {
     }
 
     /**
-     * Read a symmetric matrix from range r to matrix().
+     * Read a symmetric matrix from range r to matrix(). The source holds the lower triangle
+     * row by row, which is the storage order of {@link SymmetricMatrix}.
      *
      * @param src The source matrix.
      * @param dest The destination matrix.
      * @param numRows The number of rows in the matrix.
      */
-    public void readSymMatrix(double[] src, double[][] dest, int numRows) {
-        int sumIdx = 0;
-        for (int i = 0; i < numRows; i++) {
-            // For j = 1 To i
-            for (int j = 0; j <= i; j++) {
-                int srcIdx = sumIdx + j;
-
-                dest[i][j] = src[srcIdx];
-                //System.out.println("src[" + srcIdx + "] -> dest[" + i + ", " + j + "]");
+    public void readSymMatrix(double[] src, SymmetricMatrix dest, int numRows) {
+        System.arraycopy(src, 0, dest.data(), 0, SymmetricMatrix.rowOffset(numRows));
+    }
 
-                if (j != i) {
-                    dest[j][i] = dest[i][j];
-                }
-            }
-            sumIdx += i + 1;
+    /**
+     * Read a symmetric matrix given with both triangles. Only the lower triangle is used.
+     *
+     * @param src The source matrix.
+     * @param dest The destination matrix.
+     * @param numRows The number of rows in the matrix.
+     */
+    public void readSymMatrix(double[][] src, SymmetricMatrix dest, int numRows) {
+        for (int i = 0; i < numRows; i++) {
+            System.arraycopy(src[i], 0, dest.data(), SymmetricMatrix.rowOffset(i), i + 1);
         }
     }
 
@@ -318,10 +334,59 @@ public class InputVariables {
      * elements.
      */
     public void setConstraints(double[][] constraintLHS, double[] constraintRHS) {
-        readMatrix(constraintLHS, this.constraintLHS, numConstraints, numSecurities);
+        readMatrix(constraintLHS, getConstraintMatrix(), numConstraints, numSecurities);
         readVector(constraintRHS, this.constraintRHS, numConstraints);
     }
 
+    /**
+     * Set the constraint left hand side (LHS) as a sparse matrix and the right hand side (RHS).
+     * The dense matrix constraintLHS is released. Use this when the constraints touch only a
+     * few securities each, e.g. group, issuer or country limits.
+     *
+     * @param constraintLHS Left hand side, a matrix with numConstraints rows
+     * and numSecurities columns.
+     * @param constraintRHS Right hand side, a vector with numConstraints
+     * elements.
+     */
+    public void setConstraints(SparseMatrix constraintLHS, double[] constraintRHS) {
+        if (numConstraints != constraintLHS.getNumRows() || numSecurities != constraintLHS.getNumColumns()) {
+            System.err.println("setConstraints: numConstraints x numSecurities (" + numConstraints + " x " + numSecurities
+                    + ") and constraintLHS (" + constraintLHS.getNumRows() + " x " + constraintLHS.getNumColumns() + ") mismatch");
+        } else {
+            this.sparseConstraintLHS = constraintLHS;
+            this.constraintLHS = null;
+            readVector(constraintRHS, this.constraintRHS, numConstraints);
+        }
+    }
+
+    /**
+     * Returns the dense constraint matrix, allocating it (filled with zeros) if necessary. A
+     * sparse matrix set with {@link #setConstraints(SparseMatrix, double[])} is dropped.
+     *
+     * @return The constraint matrix constraintLHS.
+     */
+    public double[][] getConstraintMatrix() {
+        if (constraintLHS == null) {
+            constraintLHS = new double[numConstraints][numVariables + numConstraints];
+        }
+        sparseConstraintLHS = null;
+        return constraintLHS;
+    }
+
+    /**
+     * Returns the constraint coefficients of the securities for the optimizer: the sparse matrix
+     * if one is set, otherwise the non-zeros of constraintLHS.
+     */
+    SparseMatrix getConstraints() {
+        if (sparseConstraintLHS != null) {
+            return sparseConstraintLHS;
+        }
+        if (constraintLHS != null) {
+            return SparseMatrix.fromDense(constraintLHS, numSecurities);
+        }
+        return new SparseMatrix(numConstraints, numSecurities, new int[numConstraints + 1], new int[0], new double[0]);
+    }
+
     /**
      * Set the default constraint that says the sum of all weights must be 1.0.
      * The method automatically creates the constraint arrays for LHS and RHS of
@@ -336,7 +401,7 @@ public class InputVariables {
             lhs[0][i] = 1.0;
         }
 
-        readMatrix(lhs, this.constraintLHS, numConstraints, numSecurities);
+        readMatrix(lhs, getConstraintMatrix(), numConstraints, numSecurities);
         readVector(rhs, this.constraintRHS, numConstraints);
     }
 
@@ -348,19 +413,59 @@ public class InputVariables {
      * @param covariance The covariance matrix in array form.
      */
     public void setCovariance(double[] covariance) {
-        readSymMatrix(covariance, this.mMat, numSecurities);
+        readSymMatrix(covariance, getCovarianceMatrix(), numSecurities);
+    }
+
+    /**
+     * Set the covariance as a model, e.g. a {@link FactorCovariance}, instead of a matrix. The
+     * dense matrix mMat is released. The model must not change afterwards.
+     *
+     * @param covariance The covariance of numSecurities securities.
+     */
+    public void setCovariance(Covariance covariance) {
+        if (numSecurities != covariance.size()) {
+            System.err.println("setCovariance: numSecurities (" + numSecurities + ") and covariance.size() (" + covariance.size() + ") mismatch");
+        } else {
+            this.covarianceModel = covariance;
+            this.mMat = null;
+        }
+    }
+
+    /**
+     * Returns the dense covariance matrix, allocating it (filled with zeros) if necessary. A
+     * covariance model set with {@link #setCovariance(Covariance)} is dropped.
+     *
+     * @return The covariance matrix mMat.
+     */
+    public SymmetricMatrix getCovarianceMatrix() {
+        if (mMat == null) {
+            mMat = new SymmetricMatrix(numSecurities);
+        }
+        covarianceModel = null;
+        return mMat;
+    }
+
+    /**
+     * Returns the covariance for the optimizer: the model if one is set, otherwise mMat.
+     */
+    Covariance getCovariance() {
+        if (covarianceModel != null) {
+            return covarianceModel;
+        }
+        return mMat != null ? mMat : new SymmetricMatrix(numSecurities);
     }
 
     /**
      * Set the covariance matrix. The matrix is given as an double array here.
-     * Because the matrix is symetric, we only pass one half of the matrix. If
-     * you need a version that accepts the full matrix, use {@link #setCovarianceMatrix}
+     * Because the matrix is symetric, only the lower triangle (including the
+     * diagonal) is read. If you want to pass only one half of the matrix, use
+     * {@link #setCovariance}
      *
      * @param covarianceMat The covariance matrix of dimension numSecurities x
      * numSecurities.
      */
     public void setCovarianceMatrix(double[][] covarianceMat) {
-        readMatrix(covarianceMat, this.mMat, numSecurities, numSecurities);
+        readSymMatrix(covarianceMat, getCovarianceMatrix(), numSecurities);
     }
 
     /**
@@ -383,8 +488,10 @@ public class InputVariables {
         upperLimits = new double[numVariables + numConstraints];
         Arrays.fill(upperLimits, Optimizer.INFINITY);
 
-        mMat = new double[numVariables + numConstraints][numVariables + numConstraints];
-        constraintLHS = new double[numConstraints][numVariables + numConstraints];
+        mMat = null;
+        covarianceModel = null;
+        constraintLHS = null;
+        sparseConstraintLHS = null;
         constraintRHS = new double[numConstraints];
     }
 
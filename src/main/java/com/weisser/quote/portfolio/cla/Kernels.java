@@ -0,0 +1,109 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Selects the {@link LinearAlgebraKernels} used by the optimizer.
+ *
+ * Besides {@link ScalarKernels} every implementation registered for the
+ * {@link java.util.ServiceLoader} is available, e.g. the Vector API kernels of the module in the
+ * directory <tt>vector</tt>. At startup the implementation named by the system property
+ * <tt>cla.kernels</tt> is selected, "scalar" if it is not set. Implementations that cannot be
+ * loaded, e.g. because the JVM lacks a module, are skipped.
+ */
+public final class Kernels {
+
+    /**
+     * System property with the name of the kernels to use.
+     */
+    public static final String PROPERTY = "cla.kernels";
+
+    private static final List<LinearAlgebraKernels> AVAILABLE = load();
+
+    private static volatile LinearAlgebraKernels current = select(System.getProperty(PROPERTY, "scalar"));
+
+    private Kernels() {
+    }
+
+    /**
+     * Returns the kernels in use.
+     *
+     * @return The selected kernels.
+     */
+    public static LinearAlgebraKernels get() {
+        return current;
+    }
+
+    /**
+     * Selects the kernels for all optimizations started afterwards.
+     *
+     * @param kernels The kernels to use.
+     */
+    public static void set(LinearAlgebraKernels kernels) {
+        if (kernels == null) {
+            throw new IllegalArgumentException("kernels must not be null");
+        }
+        current = kernels;
+    }
+
+    /**
+     * Returns the available kernels of the given name.
+     *
+     * @param name The name, see {@link LinearAlgebraKernels#name()}.
+     * @return The kernels, or null if there are none of that name.
+     */
+    public static LinearAlgebraKernels byName(String name) {
+        for (LinearAlgebraKernels k : AVAILABLE) {
+            if (k.name().equals(name)) {
+                return k;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the names of all available kernels.
+     *
+     * @return The names, "scalar" first.
+     */
+    public static List<String> names() {
+        List<String> names = new ArrayList<String>();
+        for (LinearAlgebraKernels k : AVAILABLE) {
+            names.add(k.name());
+        }
+        return names;
+    }
+
+    private static List<LinearAlgebraKernels> load() {
+        List<LinearAlgebraKernels> kernels = new ArrayList<LinearAlgebraKernels>();
+        kernels.add(new ScalarKernels());
+
+        Iterator<LinearAlgebraKernels> it = ServiceLoader.load(LinearAlgebraKernels.class).iterator();
+        while (true) {
+            try {
+                if (!it.hasNext()) {
+                    break;
+                }
+                kernels.add(it.next());
+            } catch (ServiceConfigurationError e) {
+                System.err.println("Kernels: skipping an implementation: " + e.getMessage());
+            } catch (LinkageError e) {
+                System.err.println("Kernels: skipping an implementation: " + e);
+            }
+        }
+        return kernels;
+    }
+
+    private static LinearAlgebraKernels select(String name) {
+        LinearAlgebraKernels k = byName(name);
+        if (k == null) {
+            System.err.println("Kernels: " + PROPERTY + "=" + name + " is not available, using scalar. Available: " + names());
+            k = AVAILABLE.get(0);
+        }
+        return k;
+    }
+}
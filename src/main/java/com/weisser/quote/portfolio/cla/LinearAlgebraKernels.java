@@ -0,0 +1,54 @@
+package com.weisser.quote.portfolio.cla;
+
+/**
+ * The vector operations at the bottom of the simplex and the critical line algorithm.
+ *
+ * Vectors are parts of double[] arrays given by an offset and a length, symmetric matrices are
+ * packed like in {@link SymmetricMatrix}. {@link ScalarKernels} is the plain Java implementation.
+ * Others are found with {@link java.util.ServiceLoader} and selected by {@link #name()}, see
+ * {@link Kernels}.
+ *
+ * Implementations must be stateless, they are shared by all threads.
+ */
+public interface LinearAlgebraKernels {
+    /**
+     * Returns the name used to select the implementation, e.g. "scalar".
+     *
+     * @return The name.
+     */
+    String name();
+
+    /**
+     * Returns x(xOffset .. xOffset + length - 1)' * y(yOffset .. yOffset + length - 1).
+     */
+    double dot(double[] x, int xOffset, double[] y, int yOffset, int length);
+
+    /**
+     * Computes y(yOffset + k) += a * x(xOffset + k) for k = 0 .. length - 1. x and y may be the
+     * same array if the parts do not overlap.
+     */
+    void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+    /**
+     * Returns the sum of x(k) * y(index(k)) for k = 0 .. length - 1, i.e. a dot product with the
+     * elements of y gathered through index.
+     */
+    double gatheredDot(double[] x, int[] index, double[] y, int length);
+
+    /**
+     * Symmetric rank-1 update A += x * x' / divisor of the leading n x n block of a packed
+     * matrix. A negative divisor gives a downdate.
+     */
+    void symmetricRankOneUpdate(double[] packed, int n, double[] x, double divisor);
+
+    /**
+     * Computes y = A * x for the leading n x n block of a packed matrix.
+     */
+    void symmetricMultiply(double[] packed, int n, double[] x, double[] y);
+
+    /**
+     * Computes y1 = A * x1 and y2 = A * x2 for the leading n x n block of a packed matrix in one
+     * pass over A.
+     */
+    void symmetricMultiply(double[] packed, int n, double[] x1, double[] y1, double[] x2, double[] y2);
+}
@@ -0,0 +1,161 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dense covariance matrix that stays in a file, in the packed form of {@link SymmetricMatrix}
+ * (lower triangle by rows, little-endian doubles). The file is memory-mapped, so the matrix is
+ * not copied into the heap and pages are loaded on first use; a second solve of the same file
+ * finds them in the page cache.
+ *
+ * A mapping holds at most {@link #MAX_CHUNK_BYTES}, so large matrices are mapped in several
+ * chunks of whole rows. The products add up in the same order as those of
+ * {@link SymmetricMatrix} with {@link ScalarKernels}, so both give the same results. Instances
+ * are immutable; see {@link ProblemFile}.
+ */
+public final class MappedCovariance implements Covariance {
+
+    /**
+     * Maximum size of one mapping.
+     */
+    static final long MAX_CHUNK_BYTES = 1L << 30;
+
+    private final int size;
+
+    /**
+     * The mapped chunks.
+     */
+    private final DoubleBuffer[] chunks;
+
+    /**
+     * Chunk of each row, and index of the row's first element within it.
+     */
+    private final int[] rowChunk, rowBase;
+
+    /**
+     * Maps a packed matrix.
+     *
+     * @param channel The file, open for reading. The mapping stays valid when it is closed.
+     * @param position The offset of element (0, 0) in the file.
+     * @param size The number of rows and columns.
+     * @throws IOException If the file cannot be mapped.
+     */
+    MappedCovariance(FileChannel channel, long position, int size) throws IOException {
+        this.size = size;
+        this.rowChunk = new int[size];
+        this.rowBase = new int[size];
+        List<DoubleBuffer> mapped = new ArrayList<DoubleBuffer>();
+        long chunkStart = 0;
+
+        for (int i = 0; i < size; i++) {
+            long rowStart = (long) i * (i + 1) / 2;
+            if ((rowStart + i + 1 - chunkStart) * 8 > MAX_CHUNK_BYTES) {
+                mapped.add(map(channel, position, chunkStart, rowStart));
+                chunkStart = rowStart;
+            }
+            rowChunk[i] = mapped.size();
+            rowBase[i] = (int) (rowStart - chunkStart);
+        }
+        mapped.add(map(channel, position, chunkStart, (long) size * (size + 1) / 2));
+        this.chunks = mapped.toArray(new DoubleBuffer[0]);
+    }
+
+    private static DoubleBuffer map(FileChannel channel, long position, long from, long to) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position + 8 * from, 8 * (to - from))
+                .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public double get(int i, int j) {
+        if (i < j) {
+            int t = i;
+            i = j;
+            j = t;
+        }
+        return chunks[rowChunk[i]].get(rowBase[i] + j);
+    }
+
+    /**
+     * Row products: row j up to the diagonal is contiguous, the rest is read down column j.
+     */
+    @Override
+    public void multiplyRows(int[] rows, int from, int to, double[] x1, double[] y1, double[] x2, double[] y2) {
+        for (int r = from; r < to; r++) {
+            int j = rows[r];
+            DoubleBuffer row = chunks[rowChunk[j]];
+            int base = rowBase[j];
+            double sum1 = 0;
+            double sum2 = 0;
+            int k;
+
+            for (k = 0; k <= j; k++) {
+                double c = row.get(base + k);
+                sum1 += c * x1[k];
+                sum2 += c * x2[k];
+            }
+            for (; k < size; k++) {
+                double c = chunks[rowChunk[k]].get(rowBase[k] + j);
+                sum1 += c * x1[k];
+                sum2 += c * x2[k];
+            }
+            y1[j] = sum1;
+            y2[j] = sum2;
+        }
+    }
+
+    @Override
+    public void multiplyColumns(int[] cols, int from, int to, double[] x1, double[] y1, double[] x2, double[] y2) {
+        for (int c = from; c < to; c++) {
+            int k = cols[c];
+            double x1k = x1[k];
+            double x2k = x2[k];
+            DoubleBuffer row = chunks[rowChunk[k]];
+            int base = rowBase[k];
+            int i;
+
+            for (i = 0; i < k; i++) {
+                y1[i] += x1k * row.get(base + i);
+            }
+            for (i = 0; i < k; i++) {
+                y2[i] += x2k * row.get(base + i);
+            }
+            for (i = k; i < size; i++) {
+                double a = chunks[rowChunk[i]].get(rowBase[i] + k);
+                y1[i] += a * x1k;
+                y2[i] += a * x2k;
+            }
+        }
+    }
+
+    @Override
+    public boolean isDense() {
+        return true;
+    }
+
+    @Override
+    public double quadraticForm(double[] x) {
+        double sum = 0;
+
+        for (int i = 0; i < size; i++) {
+            DoubleBuffer row = chunks[rowChunk[i]];
+            int base = rowBase[i];
+            double offDiagonal = 0;
+
+            for (int k = 0; k < i; k++) {
+                offDiagonal += row.get(base + k) * x[k];
+            }
+            sum += x[i] * (2 * offDiagonal + row.get(base + i) * x[i]);
+        }
+        return sum;
+    }
+}
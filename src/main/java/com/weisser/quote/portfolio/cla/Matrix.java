@@ -0,0 +1,79 @@
+package com.weisser.quote.portfolio.cla;
+
+/**
+ * A dense matrix stored row by row in one contiguous double[] array. Element (i, j) is at
+ * index i * cols + j.
+ *
+ * The inner loops of the algorithm do not call {@link #get} and {@link #set} for every element.
+ * They fetch {@link #data()} and {@link #rowOffset(int)} once and index the array directly, which
+ * keeps the rows next to each other in memory and lets the JIT hoist the bounds checks.
+ */
+public final class Matrix {
+    private final int rows;
+    private final int cols;
+    private final double[] data;
+
+    /**
+     * Creates a matrix filled with zeros.
+     *
+     * @param rows Number of rows.
+     * @param cols Number of columns.
+     */
+    public Matrix(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.data = new double[rows * cols];
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    public double get(int i, int j) {
+        return data[i * cols + j];
+    }
+
+    public void set(int i, int j, double value) {
+        data[i * cols + j] = value;
+    }
+
+    public void add(int i, int j, double value) {
+        data[i * cols + j] += value;
+    }
+
+    /**
+     * Returns the backing array. Changes to the array change the matrix.
+     *
+     * @return The elements, row by row.
+     */
+    public double[] data() {
+        return data;
+    }
+
+    /**
+     * Returns the index of the first element of row i in {@link #data()}.
+     *
+     * @param i The row.
+     * @return The index of element (i, 0).
+     */
+    public int rowOffset(int i) {
+        return i * cols;
+    }
+
+    /**
+     * Copies the matrix into a new double[][] array, e.g. for debug output.
+     *
+     * @return The elements as an array of rows.
+     */
+    public double[][] toArray() {
+        double[][] m = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(data, i * cols, m[i], 0, cols);
+        }
+        return m;
+    }
+}
@@ -0,0 +1,102 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Debug output that discards everything. All trace levels are disabled, so the optimizer does
+ * not even build the messages. This is the default output of the {@link Optimizer}.
+ */
+public class NullOutput implements Output {
+    private final PrintStream nullStream = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    @Override
+    public boolean isTraceEnabled(TraceLevel level) {
+        return false;
+    }
+
+    @Override
+    public PrintStream simplexScreenOutputStream() {
+        return nullStream;
+    }
+
+    @Override
+    public PrintStream claScreenOutputStream() {
+        return nullStream;
+    }
+
+    @Override
+    public FileOutputStream simplexDebugFileOutputStream() {
+        return null;
+    }
+
+    @Override
+    public FileOutputStream claDebugFileOutputStream() {
+        return null;
+    }
+
+    @Override
+    public void openSimplexDebugFile() {
+    }
+
+    @Override
+    public void closeSimplexDebugFile() {
+    }
+
+    @Override
+    public void openCLADebugFile() {
+    }
+
+    @Override
+    public void closeCLADebugFile() {
+    }
+
+    @Override
+    public void dump(String name, int value) {
+    }
+
+    @Override
+    public void dump(String name, double value) {
+    }
+
+    @Override
+    public void dump(String name, double[][] m) {
+    }
+
+    @Override
+    public void dumpVector(String name, int[] vector) {
+    }
+
+    @Override
+    public void dumpVector(String name, double[] vector) {
+    }
+
+    @Override
+    public void println_simplex(String s) {
+    }
+
+    @Override
+    public void println_cla(String s) {
+    }
+
+    @Override
+    public void resetDebugCount() {
+    }
+
+    @Override
+    public void dumpDebugCount() {
+    }
+
+    @Override
+    public void increaseDebugCount() {
+    }
+}
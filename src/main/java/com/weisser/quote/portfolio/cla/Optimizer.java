@@ -1,7 +1,9 @@
 package com.weisser.quote.portfolio.cla;
 
+import java.util.concurrent.ForkJoinPool;
+
 public class Optimizer {
-	private Output debugOutput;
+	private final Output debugOutput;
 
 	/**
 	 * Close to zero.
@@ -19,76 +21,139 @@ public class Optimizer {
 	public static final double INVALID = 9.999E+99;
 
 	/**
-	 * The critical lines algorithm.
+	 * Default number of multiply-adds from which the steps C11 and C12 of an iteration run in
+	 * parallel, see {@link #setParallelism(ForkJoinPool, int)}.
 	 */
-	private CriticalLines criticalLines;
+	public static final int PARALLEL_THRESHOLD = 1 << 17;
 
 	/**
-	 * Output of the corner portfolios.
+	 * Output of the corner portfolios, or null for none.
 	 */
-	private CornerPortfolioOuput output;
+	private final CornerPortfolioOuput output;
 
 	/**
-	 * States of the variables.
+	 * The problem to solve.
 	 */
-	private States variableStates;
+	private final Problem problem;
 
 	/**
-	 * The input variables.
+	 * Portfolio weights of the last finished run, see {@link #getWeights()}.
 	 */
-	private InputVariables inputVars;
+	private volatile double[] lastWeights;
 
 	/**
-	 * Internal optimizer variables.
+	 * Pool and threshold for the parallel steps, see {@link #setParallelism(ForkJoinPool, int)}.
 	 */
-	private OptimizerVariables optimizerVars;
+	private volatile ForkJoinPool parallelPool = ForkJoinPool.commonPool();
+	private volatile int parallelThreshold = PARALLEL_THRESHOLD;
 
 	/**
-	 * Constructor.
-	 * @param input All input variables for the optimization.
+	 * Metrics of the runs, see {@link #setMetricsEnabled(boolean)} and {@link #setListener(OptimizerListener)}.
+	 */
+	private volatile boolean metricsEnabled;
+	private volatile OptimizerListener listener;
+
+	/**
+	 * Constructor. No debug output is written.
+	 * @param input All input variables for the optimization. They are copied, see {@link Problem}.
+	 */
+	public Optimizer(InputVariables input) {
+		this(input, null);
+	}
+
+	/**
+	 * Constructor. The corner portfolios are only returned by {@link #optimize()}.
+	 * @param input All input variables for the optimization. They are copied, see {@link Problem}.
+	 * @param debugOutput The debug output, or null for none.
 	 */
 	public Optimizer(InputVariables input, Output debugOutput) {
-		this.debugOutput = debugOutput;
-		this.inputVars = input;
-		this.criticalLines = new CriticalLines();
-		this.output = new CornerPortfolioConsoleOutput();
-		this.variableStates = new States(inputVars.getNumVariables() + inputVars.getNumConstraints());
-		this.optimizerVars  = new OptimizerVariables(inputVars.getNumVariables(), inputVars.getNumConstraints());
+		this(input, debugOutput, null);
+	}
+
+	/**
+	 * Constructor.
+	 * @param input All input variables for the optimization. They are copied, see {@link Problem}.
+	 * @param debugOutput The debug output, or null for none.
+	 * @param cornerOutput Receives each corner portfolio as it is computed, e.g.
+	 *        {@link CornerPortfolioConsoleOutput}, or null for none.
+	 */
+	public Optimizer(InputVariables input, Output debugOutput, CornerPortfolioOuput cornerOutput) {
+		this(new Problem(input), debugOutput, cornerOutput);
+	}
+
+	/**
+	 * Constructor. No debug output is written.
+	 * @param problem The problem to solve.
+	 */
+	public Optimizer(Problem problem) {
+		this(problem, null, null);
 	}
 
 	/**
-	 * Main optimization routine.
+	 * Constructor. The optimizer keeps no state between runs, so {@link #optimize()} may be called
+	 * repeatedly and from several threads, as long as the outputs allow that.
+	 * @param problem The problem to solve.
+	 * @param debugOutput The debug output, or null for none.
+	 * @param cornerOutput Receives each corner portfolio as it is computed, or null for none.
 	 */
-	public void optimize() {
-		Simplex simplex = new Simplex(inputVars.getNumVariables(), inputVars.getNumConstraints(), this.debugOutput);
+	public Optimizer(Problem problem, Output debugOutput, CornerPortfolioOuput cornerOutput) {
+		this.debugOutput = debugOutput != null ? debugOutput : new NullOutput();
+		this.problem = problem;
+		this.output = cornerOutput;
+	}
 
-	    // <M3> Set up inequality constraints and slack variables
-	    // Index to next slack variable.
-	    int j = inputVars.getNumSecurities();
+	/**
+	 * Main optimization routine. Each call works in a {@link Workspace} of its own.
+	 * @return The corner portfolios of the efficient frontier. Empty if the simplex found no
+	 *         feasible starting portfolio.
+	 */
+	public EfficientFrontier optimize() {
+		return optimize(null);
+	}
 
-	    for (int i = 0; i < inputVars.getNumConstraints(); i++) {
-		    if (inputVars.conType[i] != ConstraintType.EQUAL) {
-		        if (inputVars.conType[i] == ConstraintType.GREATER_THAN) {
-					// convert "greater than" constraint to "less than"
-			        for (int k = 0; k < inputVars.getNumSecurities(); k++) {
-			        	inputVars.constraintLHS[i][k] = -inputVars.constraintLHS[i][k];
-			        }
-			        inputVars.constraintRHS[i] = -inputVars.constraintRHS[i];
-		        }
+	/**
+	 * Main optimization routine, starting the simplex from the basis of a previous run. Simplex
+	 * phase 0 is skipped and phase 1 starts at that basis; if the basis does not fit the problem
+	 * or is no longer feasible, the simplex starts from scratch. Only the simplex is
+	 * warm-started: all corner portfolios are traced again in either case.
+	 * @param warmStart The partition of the first corner portfolio of a previous run, see
+	 *        {@link EfficientFrontier#getSimplexWarmStart()}, or null to start from scratch.
+	 * @return The corner portfolios of the efficient frontier. Empty if the simplex found no
+	 *         feasible starting portfolio.
+	 */
+	public EfficientFrontier optimize(SimplexWarmStart warmStart) {
+		EfficientFrontier.Builder frontier = new EfficientFrontier.Builder(problem.getNumSecurities());
 
-		        // slack variable coefficient
-		        inputVars.constraintLHS[i][j] = 1;
-		        j++;
-		    }
-		}
+		Object solveEvent = Events.SINK != null ? Events.SINK.beginSolve() : null;
+		OptimizerListener listener = this.listener;
+		SolverMetrics.Recorder metrics = metricsEnabled || listener != null ? new SolverMetrics.Recorder() : null;
+
+		// <M3> Inequality constraints and slack variables are set up by the Problem.
+		Workspace work = new Workspace(problem, debugOutput);
+		work.metrics = metrics;
 
 	    // <M4> Setup for outputs
-	    output.init();
+	    if (output != null) {
+	    	output.init();
+	    }
 
 	  	// <M5> run simplex algorithm
-	    // TODO Initialization and Instantiation of Simplex.
+		SimplexPhaseResult rc = null;
 
-		SimplexPhaseResult rc = simplex.run(variableStates, inputVars, optimizerVars);
+		if (warmStart != null) {
+			rc = work.simplex.runWarm(work.variableStates, work, work.optimizerVars, warmStart);
+			if (rc == null) {
+				work = new Workspace(problem, debugOutput);
+				work.metrics = metrics;
+			}
+		}
+		if (rc == null) {
+			rc = work.simplex.run(work.variableStates, work, work.optimizerVars);
+		}
+
+		States variableStates = work.variableStates;
+		OptimizerVariables optimizerVars = work.optimizerVars;
+		CriticalLines criticalLines = work.criticalLines;
 
 		if (rc != SimplexPhaseResult.OK) {
 		    // <M6> fatal error in simplex
@@ -100,33 +165,107 @@ public class Optimizer {
 		    	// Message was already displayed by Simplex.Run
 		    	System.err.println("Degenerate Problem.");
 		    }
-		    return;
+		    frontier.setSimplexResult(rc);
+		    return finish(frontier, metrics, listener, solveEvent);
+		}
+
+		if (work.getNumVariables() == problem.getNumVariables()) {
+			frontier.setSimplexWarmStart(new SimplexWarmStart(variableStates, problem.getNumVariables(), problem.getNumConstraints()));
 		}
 
 		// <M7> Set up for critical line algorithm.
-		criticalLines.setup(variableStates, inputVars, optimizerVars, debugOutput);
+		criticalLines.setParallelism(parallelPool, parallelThreshold);
+		long setupStart = metrics != null ? System.nanoTime() : 0;
+		criticalLines.setup(variableStates, work, optimizerVars, debugOutput);
+		if (metrics != null) {
+			metrics.step(SolverMetrics.Step.SETUP, System.nanoTime() - setupStart);
+		}
 
 		// <M8> Trace out the efficient frontier.
-		for (int clacount = 1; clacount <= inputVars.getMaxCornerPortfolios(); clacount++) {
-
-			// TODO We could move some of the static variables used within iteration here!!!
-			// TODO Place them in a class first and try the algorithm. Object of the class becomes a new parameter
-			//   of iteration() and cornerPortfolio()
+		for (int clacount = 1; clacount <= problem.getMaxCornerPortfolios(); clacount++) {
+			criticalLines.iteration(variableStates, work, optimizerVars, clacount);
+			frontier.add(optimizerVars);
+			if (metrics != null) {
+				metrics.iteration(variableStates.getInVarCount());
+			}
 
-			criticalLines.iteration(variableStates, inputVars, optimizerVars, clacount);
-			output.cornerPortfolio(inputVars, optimizerVars, clacount);
+			if (output != null) {
+				output.cornerPortfolio(problem, optimizerVars, clacount);
+			}
 
-			if (optimizerVars.lambdaE < inputVars.getEndLambdaE()) {
+			if (optimizerVars.lambdaE < problem.getEndLambdaE()) {
 				break; // Exit for loop
 			}
 		}
+		lastWeights = optimizerVars.portfolioWeights;
+		return finish(frontier, metrics, listener, solveEvent);
+	}
+
+	/**
+	 * Builds the frontier with the metrics of the run, sends the end event and passes
+	 * the frontier to the listener.
+	 */
+	private EfficientFrontier finish(EfficientFrontier.Builder frontier, SolverMetrics.Recorder metrics,
+			OptimizerListener listener, Object solveEvent) {
+		SolverMetrics solverMetrics = metrics != null ? metrics.finish() : null;
+		frontier.setMetrics(solverMetrics);
+		EfficientFrontier result = frontier.build();
+		if (Events.SINK != null) {
+			Events.SINK.endSolve(solveEvent, problem, result);
+		}
+		if (listener != null) {
+			listener.solved(problem, result, solverMetrics);
+		}
+		return result;
+	}
+
+	/**
+	 * Sets the pool on which large iterations of the critical line algorithm run their steps C11
+	 * and C12 (the products with Mi and with the rows of M, and the search for the next variable
+	 * to go OUT or come IN). Small iterations run sequentially, so they do not pay for forking.
+	 * The default is the common pool with {@link #PARALLEL_THRESHOLD}; with a single core
+	 * everything runs sequentially. The corner portfolios do not depend on the number of threads.
+	 * @param pool The pool, or null to always run sequentially.
+	 * @param threshold The smallest number of multiply-adds of a step to run it in parallel.
+	 */
+	public void setParallelism(ForkJoinPool pool, int threshold) {
+		this.parallelPool = pool;
+		this.parallelThreshold = threshold;
+	}
+
+	/**
+	 * Records {@link SolverMetrics} in each run, see {@link EfficientFrontier#getMetrics()}. Off
+	 * by default; the solver then does not read the clock.
+	 * @param enabled True to record the metrics.
+	 */
+	public void setMetricsEnabled(boolean enabled) {
+		this.metricsEnabled = enabled;
+	}
+
+	/**
+	 * Sets the listener that receives the result and the metrics of each run. A listener
+	 * enables the metrics.
+	 * @param listener The listener, or null for none.
+	 */
+	public void setListener(OptimizerListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Returns the problem solved by this optimizer.
+	 * @return The problem.
+	 */
+	public Problem getProblem() {
+		return problem;
 	}
 
 	/**
 	 * Returns the portfolio weights after the optimization.
-	 * @return The portfolio weights after the optimization.
+	 * @return The portfolio weights of the last corner portfolio of the last finished run.
+	 * @deprecated Use the {@link EfficientFrontier} returned by {@link #optimize()}.
 	 */
+	@Deprecated
 	public double[] getWeights() {
-		return optimizerVars.portfolioWeights;
+		return lastWeights;
 	}
 }
@@ -0,0 +1,20 @@
+package com.weisser.quote.portfolio.cla;
+
+/**
+ * Is told about each finished run of an {@link Optimizer}, e.g. to export its
+ * {@link SolverMetrics} or to alert on slow problems. Registering a listener turns the metrics
+ * on, see {@link Optimizer#setListener(OptimizerListener)}.
+ *
+ * The listener is called on the thread that ran the optimizer, after the last corner portfolio.
+ */
+public interface OptimizerListener {
+
+    /**
+     * Called after a run, also if the simplex found no starting portfolio.
+     *
+     * @param problem The problem.
+     * @param frontier The result of the run.
+     * @param metrics The counters and timings of the run.
+     */
+    void solved(Problem problem, EfficientFrontier frontier, SolverMetrics metrics);
+}
@@ -36,7 +36,7 @@ public class OptimizerTestApp {
         output.openSimplexDebugFile();
         output.openCLADebugFile();
 
-        Optimizer m = new Optimizer(inputVars, output);
+        Optimizer m = new Optimizer(inputVars, output, new CornerPortfolioConsoleOutput());
         m.optimize();
 
         output.closeSimplexDebugFile();
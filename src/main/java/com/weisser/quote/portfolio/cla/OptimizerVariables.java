@@ -17,9 +17,11 @@ public class OptimizerVariables {
 	public double[] portfolioWeights;
 
 	/**
-	 * Inverse of IN columns of A (Simplex).
+	 * Inverse of IN columns of A, rows in the order of the IN set. The simplex works on a
+	 * {@link BasisFactorization} and writes the inverse once at the end, for the setup of the
+	 * critical line algorithm.
 	 */
-	public double[][] Ai;
+	public Matrix Ai;
 
 	/**
 	 * Portfolio expected return.
@@ -49,7 +51,7 @@ public class OptimizerVariables {
 	 * variables by m for artificial basis variables.
 	 */
 	public OptimizerVariables(int n, int m) {
-	    Ai = new double[m][m];
+	    Ai = new Matrix(m, m);
 	    portfolioWeights = new double[n + m];
 	}
 }
@@ -4,6 +4,20 @@ import java.io.FileOutputStream;
 import java.io.PrintStream;
 
 public interface Output {
+    /**
+     * Tells whether messages of the given level are written. The optimizer checks this before it
+     * builds a message, so disabled levels cost nothing.
+     *
+     * The default writes no messages, so implementations written before trace levels existed
+     * keep compiling; override it to receive them.
+     *
+     * @param level The trace level of the message.
+     * @return true if messages of this level are written.
+     */
+    default boolean isTraceEnabled(TraceLevel level) {
+        return false;
+    }
+
     PrintStream simplexScreenOutputStream();
     PrintStream claScreenOutputStream();
 
@@ -13,8 +13,31 @@ public class OutputImpl implements Output {
 
     public int dbgCount;
 
+    /**
+     * Most detailed level that is written.
+     */
+    private TraceLevel traceLevel;
+
+    /**
+     * Creates an output that writes all levels.
+     */
     public OutputImpl() {
+        this(TraceLevel.TRACE);
+    }
+
+    /**
+     * Creates an output that writes all levels up to the given one.
+     *
+     * @param traceLevel The most detailed level that is written.
+     */
+    public OutputImpl(TraceLevel traceLevel) {
         this.dbgCount = 0;
+        this.traceLevel = traceLevel;
+    }
+
+    @Override
+    public boolean isTraceEnabled(TraceLevel level) {
+        return level != TraceLevel.OFF && level.compareTo(traceLevel) <= 0;
     }
 
     @Override
@@ -0,0 +1,210 @@
+package com.weisser.quote.portfolio.cla;
+
+/**
+ * An immutable portfolio optimization problem.
+ *
+ * A Problem is created once from the {@link InputVariables} and can then be solved any number of
+ * times, also concurrently: everything that changes during a run lives in a {@link Workspace}.
+ * The constraints are stored in the form used by the algorithm, i.e. "greater than" constraints
+ * are converted to "less than" constraints and every inequality has the coefficient of its slack
+ * variable set (step <M3>).
+ */
+public final class Problem {
+    private final int numSecurities;
+    private final int numSlackVars;
+    private final int numVariables;
+    private final int numConstraints;
+
+    /**
+     * Expected returns. Size: n elements.
+     */
+    private final double[] mu;
+
+    /**
+     * Lower and upper limits. Size: n elements.
+     */
+    private final double[] lowerLimits, upperLimits;
+
+    /**
+     * Covariance matrix of the securities. The slack variables have no covariance.
+     */
+    private final Covariance covariance;
+
+    /**
+     * Constraint coefficients. Size: m rows, n columns. Stored by rows and by columns (as the
+     * transpose), both sparse.
+     */
+    private final SparseMatrix constraintRows, constraintColumns;
+
+    private final double[] constraintRHS;
+    private final ConstraintType[] conType;
+    private final double endLambdaE;
+    private final int maxCornerPortfolios;
+
+    /**
+     * Creates a problem from the input variables. The input variables are copied and not
+     * modified, so they can be changed and reused afterwards.
+     *
+     * @param input The input variables, after {@link InputVariables#init} and the setters.
+     */
+    public Problem(InputVariables input) {
+        numSecurities = input.getNumSecurities();
+        numSlackVars = input.getNumSlackVars();
+        numVariables = input.getNumVariables();
+        numConstraints = input.getNumConstraints();
+
+        mu = new double[numVariables];
+        for (int j = 0; j < numVariables; j++) {
+            mu[j] = input.getExpectedReturn(j);
+        }
+        lowerLimits = Utility.redim(input.lowerLimits, numVariables);
+        upperLimits = Utility.redim(input.upperLimits, numVariables);
+        Covariance c = input.getCovariance();
+        // A dense matrix belongs to the caller and is copied, covariance models are immutable.
+        covariance = c instanceof SymmetricMatrix ? Utility.redim((SymmetricMatrix) c, numSecurities) : c;
+
+        constraintRHS = Utility.redim(input.constraintRHS, numConstraints);
+        conType = input.conType.clone();
+
+        constraintRows = setupSlackVariables(input.getConstraints());
+        constraintColumns = constraintRows.transpose();
+
+        endLambdaE = input.getEndLambdaE();
+        maxCornerPortfolios = input.getMaxCornerPortfolios();
+    }
+
+    /**
+     * <M3> Set up inequality constraints and slack variables. "Greater than" constraints are
+     * converted to "less than" constraints and every inequality gets its slack coefficient.
+     *
+     * @param securities The constraint coefficients of the securities, m rows and numSecurities
+     *                   columns.
+     * @return The constraint coefficients of all n variables.
+     */
+    private SparseMatrix setupSlackVariables(SparseMatrix securities) {
+        int[] start = securities.rowStart();
+        int[] cols = securities.columns();
+        double[] vals = securities.values();
+        int nnz = securities.getNumNonZeros() + numSlackVars;
+        int[] rowStart = new int[numConstraints + 1];
+        int[] columns = new int[nnz];
+        double[] values = new double[nnz];
+        int p = 0;
+
+        // Index to next slack variable.
+        int j = numSecurities;
+
+        for (int i = 0; i < numConstraints; i++) {
+            // convert "greater than" constraint to "less than"
+            double sign = conType[i] == ConstraintType.GREATER_THAN ? -1 : 1;
+
+            for (int k = start[i]; k < start[i + 1]; k++) {
+                columns[p] = cols[k];
+                values[p] = sign * vals[k];
+                p++;
+            }
+            if (conType[i] != ConstraintType.EQUAL) {
+                constraintRHS[i] *= sign;
+
+                // slack variable coefficient
+                columns[p] = j;
+                values[p] = 1;
+                p++;
+                j++;
+            }
+            rowStart[i + 1] = p;
+        }
+        return new SparseMatrix(rowStart, columns, values, numConstraints, numVariables);
+    }
+
+    public int getNumSecurities() {
+        return numSecurities;
+    }
+
+    public int getNumSlackVars() {
+        return numSlackVars;
+    }
+
+    /**
+     * Number of variables n = numSecurities + numSlackVars.
+     *
+     * @return The number of variables.
+     */
+    public int getNumVariables() {
+        return numVariables;
+    }
+
+    public int getNumConstraints() {
+        return numConstraints;
+    }
+
+    public double getExpectedReturn(int j) {
+        return mu[j];
+    }
+
+    public double getLowerLimit(int j) {
+        return lowerLimits[j];
+    }
+
+    public double getUpperLimit(int j) {
+        return upperLimits[j];
+    }
+
+    public double getCovariance(int i, int j) {
+        return covariance.get(i, j);
+    }
+
+    /**
+     * Returns a constraint coefficient, after the conversion of step <M3>.
+     *
+     * @param i The constraint.
+     * @param j The variable.
+     * @return The coefficient of variable j in constraint i.
+     */
+    public double getConstraint(int i, int j) {
+        return constraintColumns.get(j, i);
+    }
+
+    /**
+     * Returns a constraint right hand side, after the conversion of step <M3>.
+     *
+     * @param i The constraint.
+     * @return The right hand side of constraint i.
+     */
+    public double getConstraintRHS(int i) {
+        return constraintRHS[i];
+    }
+
+    public ConstraintType getConstraintType(int i) {
+        return conType[i];
+    }
+
+    public double getEndLambdaE() {
+        return endLambdaE;
+    }
+
+    public int getMaxCornerPortfolios() {
+        return maxCornerPortfolios;
+    }
+
+    /**
+     * The covariance matrix, for the kernels. Must not be modified.
+     */
+    Covariance covariance() {
+        return covariance;
+    }
+
+    /**
+     * The constraint coefficients by rows (m x n), for the kernels.
+     */
+    SparseMatrix constraintRows() {
+        return constraintRows;
+    }
+
+    /**
+     * The constraint coefficients by columns, i.e. the transpose (n x m), for the kernels.
+     */
+    SparseMatrix constraintColumns() {
+        return constraintColumns;
+    }
+}
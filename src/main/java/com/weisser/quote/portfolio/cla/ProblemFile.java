@@ -0,0 +1,260 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary problem files, for universes whose covariance matrix is too large to build and copy in
+ * the heap on every run.
+ *
+ * {@link #write} stores the {@link InputVariables}; {@link #read} maps the file and returns
+ * input variables whose covariance is a {@link MappedCovariance} on the file, so it is never
+ * copied. Everything else (O(n + non-zeros)) is read into the heap.
+ *
+ * Layout, little-endian, every section starting at a multiple of 8 bytes:
+ * <pre>
+ *  0  int     magic "CLAP"
+ *  4  int     version (1)
+ *  8  int     n, the number of securities
+ * 12  int     m, the number of constraints
+ * 16  int     nnz, the number of constraint non-zeros
+ * 20  int     maximum number of corner portfolios
+ * 24  double  endLambdaE
+ * 32  byte[m] constraint types '=', '&lt;' or '&gt;', padded to 8 bytes
+ *     double[n] expected returns, double[n] lower limits, double[n] upper limits
+ *     double[m] constraint right hand sides
+ *     int[m + 1] row starts, int[nnz] columns, padded to 8 bytes; double[nnz] values
+ *         (the constraint matrix of the securities, see {@link SparseMatrix})
+ *     double[n * (n + 1) / 2] covariance, lower triangle by rows
+ * </pre>
+ */
+public final class ProblemFile {
+
+    /**
+     * "CLAP" as the first four bytes of the file.
+     */
+    static final int MAGIC = 0x50414c43;
+
+    static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 32;
+
+    private ProblemFile() {
+    }
+
+    /**
+     * Writes a problem file. The covariance is written row by row through
+     * {@link Covariance#get}, so a {@link FactorCovariance} is not formed in memory.
+     *
+     * @param input The input variables, after {@link InputVariables#init} and the setters.
+     * @param file The file to create or overwrite.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(InputVariables input, Path file) throws IOException {
+        int n = input.getNumSecurities();
+        int m = input.getNumConstraints();
+        SparseMatrix a = input.getConstraints();
+        Covariance covariance = input.getCovariance();
+        int nnz = a.getNumNonZeros();
+        int i, j;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Writer out = new Writer(channel);
+
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(n);
+            out.putInt(m);
+            out.putInt(nnz);
+            out.putInt(input.getMaxCornerPortfolios());
+            out.putDouble(input.getEndLambdaE());
+
+            for (i = 0; i < m; i++) {
+                out.putByte(typeChar(input.conType[i]));
+            }
+            out.pad();
+            for (j = 0; j < n; j++) {
+                out.putDouble(input.getExpectedReturn(j));
+            }
+            for (j = 0; j < n; j++) {
+                out.putDouble(input.lowerLimits[j]);
+            }
+            for (j = 0; j < n; j++) {
+                out.putDouble(input.upperLimits[j]);
+            }
+            for (i = 0; i < m; i++) {
+                out.putDouble(input.constraintRHS[i]);
+            }
+            for (i = 0; i <= m; i++) {
+                out.putInt(a.rowStart()[i]);
+            }
+            for (i = 0; i < nnz; i++) {
+                out.putInt(a.columns()[i]);
+            }
+            out.pad();
+            for (i = 0; i < nnz; i++) {
+                out.putDouble(a.values()[i]);
+            }
+            for (i = 0; i < n; i++) {
+                for (j = 0; j <= i; j++) {
+                    out.putDouble(covariance.get(i, j));
+                }
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Reads a problem file. The covariance stays in the file, see {@link MappedCovariance}.
+     *
+     * @param file The file written by {@link #write}.
+     * @return The input variables, ready for a {@link Problem} or an {@link Optimizer}.
+     * @throws IOException If the file cannot be read or is not a problem file.
+     */
+    public static InputVariables read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException(file + ": not a problem file");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException(file + ": not a problem file");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException(file + ": unsupported version " + header.getInt(4));
+            }
+            int n = header.getInt(8);
+            int m = header.getInt(12);
+            int nnz = header.getInt(16);
+            int maxCornerPortfolios = header.getInt(20);
+            double endLambdaE = header.getDouble(24);
+
+            long body = padded(m) + 8L * (3L * n + m) + padded(4L * (m + 1 + nnz)) + 8L * nnz;
+            long covariancePosition = HEADER_BYTES + body;
+            if (channel.size() != covariancePosition + 8 * ((long) n * (n + 1) / 2)) {
+                throw new IOException(file + ": size does not match the header");
+            }
+
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, body).order(ByteOrder.LITTLE_ENDIAN);
+            char[] conTypes = new char[m];
+            for (int i = 0; i < m; i++) {
+                conTypes[i] = (char) in.get();
+            }
+            ((Buffer) in).position((int) padded(m));
+
+            double[] mu = getDoubles(in, n);
+            double[] lower = getDoubles(in, n);
+            double[] upper = getDoubles(in, n);
+            double[] rhs = getDoubles(in, m);
+            int[] rowStart = getInts(in, m + 1);
+            int[] columns = getInts(in, nnz);
+            skip(in, (int) (padded(4L * (m + 1 + nnz)) - 4L * (m + 1 + nnz)));
+            double[] values = getDoubles(in, nnz);
+
+            InputVariables input = new InputVariables();
+            input.init(n, conTypes);
+            input.setExpectedReturns(mu);
+            input.setLowerBoundaries(lower);
+            input.setUpperBoundaries(upper);
+            input.setConstraints(new SparseMatrix(m, n, rowStart, columns, values), rhs);
+            input.setEndLambdaE(endLambdaE);
+            input.setMaxCornerPortfolios(maxCornerPortfolios);
+            input.setCovariance(new MappedCovariance(channel, covariancePosition, n));
+            return input;
+        }
+    }
+
+    private static char typeChar(ConstraintType type) {
+        switch (type) {
+            case LESS_THAN:
+                return '<';
+            case GREATER_THAN:
+                return '>';
+            default:
+                return '=';
+        }
+    }
+
+    private static long padded(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private static double[] getDoubles(ByteBuffer in, int count) {
+        double[] d = new double[count];
+        in.asDoubleBuffer().get(d);
+        skip(in, 8 * count);
+        return d;
+    }
+
+    private static int[] getInts(ByteBuffer in, int count) {
+        int[] d = new int[count];
+        in.asIntBuffer().get(d);
+        skip(in, 4 * count);
+        return d;
+    }
+
+    /**
+     * Advances the position. The position, flip and clear calls go through Buffer, because the
+     * ByteBuffer overrides of Java 9 and later do not exist on Java 8.
+     */
+    private static void skip(ByteBuffer in, int bytes) {
+        ((Buffer) in).position(in.position() + bytes);
+    }
+
+    /**
+     * Buffered little-endian output to a channel.
+     */
+    private static final class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long written;
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putByte(char c) throws IOException {
+            ensure(1);
+            buffer.put((byte) c);
+        }
+
+        void putInt(int v) throws IOException {
+            ensure(4);
+            buffer.putInt(v);
+        }
+
+        void putDouble(double v) throws IOException {
+            ensure(8);
+            buffer.putDouble(v);
+        }
+
+        /**
+         * Pads with zeros to a multiple of 8 bytes.
+         */
+        void pad() throws IOException {
+            while ((written + buffer.position()) % 8 != 0) {
+                putByte('\0');
+            }
+        }
+
+        void flush() throws IOException {
+            ((Buffer) buffer).flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            ((Buffer) buffer).clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.weisser.quote.portfolio.cla;
+
+/**
+ * Plain Java loops, the default {@link LinearAlgebraKernels}. The sums are taken from left to
+ * right, so the results are the same on every JVM.
+ */
+public final class ScalarKernels implements LinearAlgebraKernels {
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public double dot(double[] x, int xOffset, double[] y, int yOffset, int length) {
+        double sum = 0;
+        for (int k = 0; k < length; k++) {
+            sum += x[xOffset + k] * y[yOffset + k];
+        }
+        return sum;
+    }
+
+    @Override
+    public void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        for (int k = 0; k < length; k++) {
+            y[yOffset + k] += a * x[xOffset + k];
+        }
+    }
+
+    @Override
+    public double gatheredDot(double[] x, int[] index, double[] y, int length) {
+        double sum = 0;
+        for (int k = 0; k < length; k++) {
+            sum += x[k] * y[index[k]];
+        }
+        return sum;
+    }
+
+    @Override
+    public void symmetricRankOneUpdate(double[] packed, int n, double[] x, double divisor) {
+        int idx = 0;
+        for (int i = 0; i < n; i++) {
+            double s = x[i] / divisor;
+            for (int j = 0; j <= i; j++) {
+                packed[idx++] += s * x[j];
+            }
+        }
+    }
+
+    /**
+     * Every stored element is read once and used for both (i, j) and (j, i).
+     */
+    @Override
+    public void symmetricMultiply(double[] packed, int n, double[] x, double[] y) {
+        int idx = 0;
+        for (int i = 0; i < n; i++) {
+            double xi = x[i];
+            double sum = 0;
+            for (int j = 0; j < i; j++) {
+                double a = packed[idx++];
+                sum += a * x[j];
+                y[j] += a * xi;
+            }
+            y[i] = sum + packed[idx++] * xi;
+        }
+    }
+
+    @Override
+    public void symmetricMultiply(double[] packed, int n, double[] x1, double[] y1, double[] x2, double[] y2) {
+        int idx = 0;
+        for (int i = 0; i < n; i++) {
+            double x1i = x1[i];
+            double x2i = x2[i];
+            double sum1 = 0;
+            double sum2 = 0;
+            for (int j = 0; j < i; j++) {
+                double a = packed[idx++];
+                sum1 += a * x1[j];
+                sum2 += a * x2[j];
+                y1[j] += a * x1i;
+                y2[j] += a * x2i;
+            }
+            double d = packed[idx++];
+            y1[i] = sum1 + d * x1i;
+            y2[i] = sum2 + d * x2i;
+        }
+    }
+}
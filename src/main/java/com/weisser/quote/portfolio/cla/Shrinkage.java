@@ -0,0 +1,24 @@
+package com.weisser.quote.portfolio.cla;
+
+/**
+ * Shrinkage of a sample covariance matrix towards a structured target, see
+ * {@link CovarianceBuilder}. The shrinkage intensity is estimated from the returns.
+ */
+public enum Shrinkage {
+    /**
+     * The plain sample covariance.
+     */
+    NONE,
+
+    /**
+     * Ledoit and Wolf (2004), "A well-conditioned estimator for large-dimensional covariance
+     * matrices": shrinks towards the average variance times the identity.
+     */
+    LEDOIT_WOLF,
+
+    /**
+     * Ledoit and Wolf (2003), "Honey, I shrunk the sample covariance matrix": shrinks towards the
+     * matrix with the sample variances and the average sample correlation.
+     */
+    CONSTANT_CORRELATION
+}
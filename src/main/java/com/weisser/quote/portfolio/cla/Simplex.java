@@ -9,6 +9,11 @@ public class Simplex {
      */
     public Output output;
 
+    /**
+     * Trace levels of {@link #output}, queried once in the constructor.
+     */
+    private boolean infoEnabled, debugEnabled, traceEnabled;
+
     // In the book it was a Visual Basic Dialog Box displayed to the user.
     boolean allowDegenerate = true;
 
@@ -32,48 +37,73 @@ public class Simplex {
      */
     double[] adjRate;
 
+    /**
+     * FTRAN of the column of the variable coming IN, B^-1 * A(ALL,jMax).
+     */
+    double[] column;
+
+    /**
+     * Factorisation of the basis A(ALL,IN).
+     */
+    BasisFactorization basis;
+
     /**
      * Number of IN ABVs (artificial basis variables). (cant be made local, used in other methods read/write).
      */
     int numInABVs;
 
+    /**
+     * Number of pivots of the current phase.
+     */
+    private int pivots;
+
     public Simplex(int n, int m, Output output) {
         this.z = new double[n + m];
         this.price = new double[m];
         this.profit = new double[n];
         this.adjRate = new double[m];
+        this.column = new double[m];
+        this.basis = new BasisFactorization(m, n + m);
 
         this.output = output;
+        this.infoEnabled = output.isTraceEnabled(TraceLevel.INFO);
+        this.debugEnabled = output.isTraceEnabled(TraceLevel.DEBUG);
+        this.traceEnabled = output.isTraceEnabled(TraceLevel.TRACE);
     }
 
-    public SimplexPhaseResult run(States variableStates, InputVariables inputVars, OptimizerVariables optimizerVars) {
+    public SimplexPhaseResult run(States variableStates, Workspace work, OptimizerVariables optimizerVars) {
         int i, j;
 
-        int n = inputVars.getNumVariables();
-        int m = inputVars.getNumConstraints();
+        int n = work.getNumVariables();
+        int m = work.getNumConstraints();
+        int[] abvs = new int[m];
+        SparseMatrix a = work.getProblem().constraintRows();
+        int[] rowStart = a.rowStart();
+        int[] columns = a.columns();
+        double[] values = a.values();
 
         // <S1> initialize all variables other than ABVs (artifical basis variables) to be OUT at their
         // lower limits.
         for (j = 0; j < n; j++) {
             variableStates.addOutVar(j);
             variableStates.setState(j, State.STATE_LOWER);
-            optimizerVars.portfolioWeights[j] = inputVars.lowerLimits[j];
+            optimizerVars.portfolioWeights[j] = work.lowerLimits[j];
             z[j] = 0;
         }
 
         // <S2> Set up ABVs.
         for (i = 0; i < m; i++) {
-            double temp = inputVars.constraintRHS[i];
+            double temp = work.getConstraintRHS(i);
 
-            for (j = 0; j < n; j++) {
-                temp -= inputVars.constraintLHS[i][j] * inputVars.lowerLimits[j];
+            for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+                temp -= values[k] * work.lowerLimits[columns[k]];
             }
             if (temp >= 0) {
-                inputVars.constraintLHS[i][n + i] = 1;
+                work.setArtificial(i, 1);
             } else {
-                inputVars.constraintLHS[i][n + i] = -1;
+                work.setArtificial(i, -1);
             }
-            optimizerVars.Ai[i][i] = inputVars.constraintLHS[i][n + i];
+            abvs[i] = n + i;
 
             variableStates.addInVar(n + i); // inVars.Add n + i
             variableStates.setState(n + i, State.STATE_IN);
@@ -86,20 +116,25 @@ public class Simplex {
         // starting number of IN ABVs
         numInABVs = m;
 
+        // The starting basis is the diagonal of the ABV columns.
+        basis.factorize(work, abvs);
+
         // <S3> Run simplex phase 1
-        SimplexPhaseResult returnCode = simplexPhase(SimplexPhase.PHASE_0, variableStates, inputVars, optimizerVars);
+        SimplexPhaseResult returnCode = simplexPhase(SimplexPhase.PHASE_0, variableStates, work, optimizerVars);
 
-        output.println_simplex("Simplex phase one done.");
-        output.dumpVector("x       ", optimizerVars.portfolioWeights);
+        if (infoEnabled) {
+            output.println_simplex("Simplex phase one done.");
+            output.dumpVector("x       ", optimizerVars.portfolioWeights);
+        }
 
         if (returnCode == SimplexPhaseResult.OK) {
             // <S4> No ABVs are IN (not degenerate).
-            // Reallocate arrays to delete elements for ABVs.
+            // Reallocate arrays to delete elements for ABVs. The ABV columns of A are not
+            // read any more.
 
-            inputVars.lowerLimits = Utility.redim(inputVars.lowerLimits, n);
-            inputVars.upperLimits = Utility.redim(inputVars.upperLimits, n);
+            work.lowerLimits = Utility.redim(work.lowerLimits, n);
+            work.upperLimits = Utility.redim(work.upperLimits, n);
             optimizerVars.portfolioWeights = Utility.redim(optimizerVars.portfolioWeights, n);
-            inputVars.constraintLHS = Utility.redim(inputVars.constraintLHS, m, n);
             variableStates.redimStates(n);
         } else if (returnCode == SimplexPhaseResult.ERROR_DEGENERATE) {
             // <S5> Degenerate problem--One or more ABVs still IN.
@@ -108,71 +143,189 @@ public class Simplex {
 
             if (allowDegenerate) {
                 returnCode = SimplexPhaseResult.OK; // Allow program to continue
-                inputVars.setNumVariables(n + m); // Add in ABVs to variable count.
-                n = inputVars.getNumVariables();
-                inputVars.setExpectedReturnSize(n);
+                work.setNumVariables(n + m); // Add in ABVs to variable count.
+                n = work.getNumVariables();
+                work.setExpectedReturnSize(n);
 
                 profit = new double[n];
 
                 // Set upper limits an ABVs to zero
                 for (i = 0; i < m; i++) {
-                    inputVars.upperLimits[n - m + i] = Optimizer.EPSILON;
+                    work.upperLimits[n - m + i] = Optimizer.EPSILON;
                 }
 
-                // increase size of MMat() while preserving contents.
-                double[][] Mtemp = new double[inputVars.getNumSecurities()][inputVars.getNumSecurities()];
+                // MMat() grows with n, see Workspace.getM().
 
-                for (i = 0; i < inputVars.getNumSecurities(); i++) {
-                    for (j = 0; j < inputVars.getNumSecurities(); j++) {
-                        Mtemp[i][j] = inputVars.mMat[i][j];
-                    }
-                }
+                variableStates.resize(n + m);
+            }
+        }
 
-                int newSize = n + m;
-                inputVars.mMat = Utility.redim(inputVars.mMat, newSize, newSize);
+        if (returnCode == SimplexPhaseResult.OK) {
+            returnCode = maximizeReturn(variableStates, work, optimizerVars);
+        }
+        if (returnCode == SimplexPhaseResult.OK) {
+            basis.inverse(variableStates, optimizerVars.Ai);
+        }
 
-                for (i = 0; i < inputVars.getNumSecurities(); i++) {
-                    for (j = 0; j < inputVars.getNumSecurities(); j++) {
-                        inputVars.mMat[i][j] = Mtemp[i][j]; // MMat(i, j) = Mtemp(i, j)
-                        // objective function "expected return"
-                    }
-                }
+        eraseVectors();
+        return returnCode;
+    }
 
-                variableStates.resize(n + m);
+    /**
+     * Runs the simplex from the basis of a previous run instead of from the ABVs. Phase 0 is
+     * skipped; phase 1 starts at the basis and usually needs few or no steps.
+     *
+     * @return OK, or null if the basis is singular or infeasible for this problem. The states and
+     *         optimizer variables are then undefined and the run must start over with
+     *         {@link #run}.
+     */
+    public SimplexPhaseResult runWarm(States variableStates, Workspace work, OptimizerVariables optimizerVars, SimplexWarmStart warmStart) {
+        int i, j, k;
+        int n = work.getNumVariables();
+        int m = work.getNumConstraints();
+
+        if (!warmStart.fits(work.getProblem())) {
+            return null;
+        }
+
+        // OUT variables at their limits, the others IN.
+        for (i = 0; i < m; i++) {
+            j = warmStart.getInVar(i);
+            variableStates.addInVar(j);
+            variableStates.setState(j, State.STATE_IN);
+        }
+        for (j = 0; j < n; j++) {
+            if (variableStates.isIn(j)) {
+                continue;
+            }
+            variableStates.addOutVar(j);
+            if (warmStart.isUp(j)) {
+                if (work.upperLimits[j] == Optimizer.INFINITY) {
+                    return null;
+                }
+                variableStates.setState(j, State.STATE_UPPER);
+                optimizerVars.portfolioWeights[j] = work.upperLimits[j];
+            } else {
+                variableStates.setState(j, State.STATE_LOWER);
+                optimizerVars.portfolioWeights[j] = work.lowerLimits[j];
             }
         }
 
-        if (returnCode == SimplexPhaseResult.OK) {
-            // <56> Run simplex phase 2
-            // Objective is now to maximize expected return
-            for (j = 0; j < n; j++) {
-                z[j] = inputVars.getExpectedReturn(j);
+        // Factorise A(ALL,IN).
+        int[] vars = new int[m];
+        for (i = 0; i < m; i++) {
+            vars[i] = variableStates.getInVar(i);
+        }
+        if (!basis.factorize(work, vars)) {
+            return null;
+        }
+
+        // x(IN) = A(ALL,IN)^-1 * (b - A(ALL,OUT) * x(OUT)), which must be within the limits.
+        // The OUT variables are the non-zeros of a row that are not IN.
+        SparseMatrix a = work.getProblem().constraintRows();
+        int[] rowStart = a.rowStart();
+        int[] columns = a.columns();
+        double[] values = a.values();
+        double[] rhs = new double[m];
+        for (i = 0; i < m; i++) {
+            double sum = work.getConstraintRHS(i);
+            for (k = rowStart[i]; k < rowStart[i + 1]; k++) {
+                j = columns[k];
+                if (!variableStates.isIn(j)) {
+                    sum -= values[k] * optimizerVars.portfolioWeights[j];
+                }
             }
-            returnCode = simplexPhase(SimplexPhase.PHASE_1, variableStates, inputVars, optimizerVars);
-            if (returnCode == SimplexPhaseResult.OK) {
-                // <S7> Ensure unique solution
-                alterMu(variableStates, inputVars);
+            rhs[i] = sum;
+        }
+        basis.ftran(rhs);
+        for (i = 0; i < m; i++) {
+            double x = rhs[i];
+            j = basis.variable(i);
+            if (x < work.lowerLimits[j] - Optimizer.EPSILON || x > work.upperLimits[j] + Optimizer.EPSILON) {
+                return null;
             }
+            optimizerVars.portfolioWeights[j] = x;
+        }
+
+        if (infoEnabled) {
+            output.println_simplex("Simplex warm start, phase one skipped.");
+            output.dumpVector("x       ", optimizerVars.portfolioWeights);
         }
 
-        // Erase z, Price, Profit, AdjRate
+        // As in <S4>: no ABVs.
+        work.lowerLimits = Utility.redim(work.lowerLimits, n);
+        work.upperLimits = Utility.redim(work.upperLimits, n);
+        optimizerVars.portfolioWeights = Utility.redim(optimizerVars.portfolioWeights, n);
+        variableStates.redimStates(n);
+
+        SimplexPhaseResult returnCode = maximizeReturn(variableStates, work, optimizerVars);
+        if (returnCode == SimplexPhaseResult.OK) {
+            basis.inverse(variableStates, optimizerVars.Ai);
+        }
+        eraseVectors();
+        return returnCode;
+    }
+
+    /**
+     * <S6> Run simplex phase 2: the objective is now to maximize expected return.
+     */
+    private SimplexPhaseResult maximizeReturn(States variableStates, Workspace work, OptimizerVariables optimizerVars) {
+        for (int j = 0; j < work.getNumVariables(); j++) {
+            z[j] = work.getExpectedReturn(j);
+        }
+        SimplexPhaseResult returnCode = simplexPhase(SimplexPhase.PHASE_1, variableStates, work, optimizerVars);
+        if (returnCode == SimplexPhaseResult.OK) {
+            // <S7> Ensure unique solution
+            alterMu(variableStates, work);
+        }
+        return returnCode;
+    }
+
+    /**
+     * Erase z, Price, Profit, AdjRate and the basis.
+     */
+    private void eraseVectors() {
         z = null;
         price = null;
         profit = null;
         adjRate = null;
-
-        return returnCode;
+        column = null;
+        basis = null;
     }
 
     /**
-     * Performs one simplex step.
+     * Performs one simplex phase and records its pivots and time if metrics are enabled.
      */
     private SimplexPhaseResult simplexPhase(SimplexPhase simplexPhase,
                                             States variableStates,
-                                            InputVariables inputVars,
+                                            Workspace work,
                                             OptimizerVariables optimizerVars) {
+        SolverMetrics.Recorder metrics = work.metrics;
+        if (metrics == null) {
+            return pivot(simplexPhase, variableStates, work, optimizerVars);
+        }
+        long start = System.nanoTime();
+        pivots = 0;
+        SimplexPhaseResult result = pivot(simplexPhase, variableStates, work, optimizerVars);
+        metrics.simplexPhase(simplexPhase, pivots, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Pivots until the phase is done.
+     */
+    private SimplexPhaseResult pivot(SimplexPhase simplexPhase,
+                                     States variableStates,
+                                     Workspace work,
+                                     OptimizerVariables optimizerVars) {
         int i0, i, j0, j;
         int k;
+        int m = work.getNumConstraints();
+        // Columns of A; the OUT variables are never ABVs, so the problem has all their columns.
+        SparseMatrix a = work.getProblem().constraintColumns();
+        int[] columnStart = a.rowStart();
+        int[] rows = a.columns();
+        double[] values = a.values();
         Direction inDirection;
         int jMax = -1;			// in VB Version ist es 0, das passt aber wegen der anderen Indizes hier nicht. 
         double profitMax, sum;
@@ -183,22 +336,27 @@ public class Simplex {
 
         while (true) {
             // Debug
-            dumpStates(variableStates, inputVars, optimizerVars);
+            if (debugEnabled) {
+                dumpStates(variableStates, work, optimizerVars);
+            }
             output.increaseDebugCount();
 
             // <S10> Compute price for each constraint.
             // price[i]: Price for the i-th artificial basis variable.
-            for (i = 0; i < inputVars.getNumConstraints(); i++) {
-                sum = 0;
-                for (j = 0; j < variableStates.getInVarCount(); j++) {
-                    sum -= optimizerVars.Ai[j][i] * z[variableStates.getInVar(j)];
-                }
-                price[i] = sum;
+            // Price = -Ai' * z(IN), one BTRAN with the objective of the basic variables.
+            for (i = 0; i < m; i++) {
+                price[i] = z[basis.variable(i)];
+            }
+            basis.btran(price);
+            for (i = 0; i < m; i++) {
+                price[i] = -price[i];
             }
 
-            output.dumpVector("price   ", price);
-            output.dump("A       ", inputVars.constraintLHS);
-            output.dumpVector("z       ", z);
+            if (traceEnabled) {
+                output.dumpVector("price   ", price);
+                output.dump("A       ", work.constraintsToArray());
+                output.dumpVector("z       ", z);
+            }
 
             // <S11> Compute profit for each "out" variable coming "in".
             // profit[j]: Profit for variable j.
@@ -207,8 +365,8 @@ public class Simplex {
             for (j0 = 0; j0 < variableStates.getOutVarCount(); j0++) {
                 j = variableStates.getOutVar(j0);
                 sum = z[j];
-                for (i = 0; i < inputVars.getNumConstraints(); i++) {
-                    sum += inputVars.constraintLHS[i][j] * price[i];
+                for (k = columnStart[j]; k < columnStart[j + 1]; k++) {
+                    sum += values[k] * price[rows[k]];
                 }
                 if (variableStates.isUp(j)) {
                     sum = -sum;
@@ -220,7 +378,9 @@ public class Simplex {
                 }
             }
 
-            output.dumpVector("profit  ", profit);
+            if (traceEnabled) {
+                output.dumpVector("profit  ", profit);
+            }
 
             if (profitMax < Optimizer.EPSILON) {
                 // <S12> No profit from any OUT variable coming IN.
@@ -247,12 +407,13 @@ public class Simplex {
             }
 
             // <S13> Compute rate of adjustment for each IN variable as
-            // variable jMax comes IN (AdjRate = - Ai * A(ALL,jMax)).
-            for (i = 0; i < inputVars.getNumConstraints(); i++) {
-                sum = 0;
-                for (k = 0; k < inputVars.getNumConstraints(); k++) {
-                    sum -= optimizerVars.Ai[i][k] * inputVars.constraintLHS[k][jMax];
-                }
+            // variable jMax comes IN (AdjRate = - Ai * A(ALL,jMax)), one FTRAN.
+            // adjRate follows the order of the IN set, column the positions of the basis.
+            work.getConstraintColumn(jMax, column, 0);
+            basis.ftran(column);
+            int[] inVars = variableStates.getInVars();
+            for (i = 0; i < m; i++) {
+                sum = -column[basis.position(inVars[i])];
                 if (inDirection == Direction.Lower) {
                     sum = -sum;
                 }
@@ -270,25 +431,25 @@ public class Simplex {
             //iOut = 0;    // 0 indicates variable coming In also goes out.
             iOut = -1;
             outDirection = inDirection;
-            if (inputVars.upperLimits[jMax] == Optimizer.INFINITY) {
+            if (work.upperLimits[jMax] == Optimizer.INFINITY) {
                 theta = Optimizer.INFINITY;
             } else {
-                theta = inputVars.upperLimits[jMax] - inputVars.lowerLimits[jMax];
+                theta = work.upperLimits[jMax] - work.lowerLimits[jMax];
             }
 
-            for (i = 0; i < inputVars.getNumConstraints(); i++) {
+            for (i = 0; i < work.getNumConstraints(); i++) {
                 j = variableStates.getInVar(i);
                 if (adjRate[i] < -Optimizer.EPSILON) {
                     // Check for variable hitting lower limit
-                    tmpTheta = (inputVars.lowerLimits[j] - optimizerVars.portfolioWeights[j]) / adjRate[i];
+                    tmpTheta = (work.lowerLimits[j] - optimizerVars.portfolioWeights[j]) / adjRate[i];
                     if (tmpTheta < theta) {
                         theta = tmpTheta;
                         iOut = i;
                         outDirection = Direction.Lower;
                     }
-                } else if (adjRate[i] > Optimizer.EPSILON && inputVars.upperLimits[j] != Optimizer.INFINITY) {
+                } else if (adjRate[i] > Optimizer.EPSILON && work.upperLimits[j] != Optimizer.INFINITY) {
                     // Check for variable hitting upper limit
-                    tmpTheta = (inputVars.upperLimits[j] - optimizerVars.portfolioWeights[j]) / adjRate[i];
+                    tmpTheta = (work.upperLimits[j] - optimizerVars.portfolioWeights[j]) / adjRate[i];
                     if (tmpTheta < theta) {
                         theta = tmpTheta;
                         iOut = i;
@@ -303,7 +464,9 @@ public class Simplex {
                 return simplexPhaseResult;
             }
 
-            output.println_simplex("iOut   " + iOut);
+            if (debugEnabled) {
+                output.println_simplex("iOut   " + iOut);
+            }
 
             // Get "j" Index of variable going OUT.
             int jOut;
@@ -315,10 +478,12 @@ public class Simplex {
                 jOut = jMax; // variable coming IN is also going OUT.
             }
 
-            output.println_simplex("jOut   " + jOut);
+            if (debugEnabled) {
+                output.println_simplex("jOut   " + jOut);
+            }
 
             // <S16> update the IN variables (x's).
-            for (i0 = 0; i0 < inputVars.getNumConstraints(); i0++) {
+            for (i0 = 0; i0 < work.getNumConstraints(); i0++) {
                 j = variableStates.getInVar(i0);
                 optimizerVars.portfolioWeights[j] += theta * adjRate[i0];
             }
@@ -332,16 +497,23 @@ public class Simplex {
             variableStates.goIn(jMax);
 
             // <S18> variable gOut goes OUT
-            variableStates.goOut(jOut, outDirection, inputVars);
+            variableStates.goOut(jOut, outDirection, work);
 
-            // <S19> Update Alnverse If var going OUT is not var coming IN.
+            // <S19> Update the basis if var going OUT is not var coming IN: jMax takes the
+            // position of jOut, so the IN order needs no reordering of rows (<S20>, <S21>).
             if (jMax != jOut) {
-                updateAInverse(variableStates, inputVars, optimizerVars, iOut, jMax, inDirection);
+                basis.replace(work, basis.position(jOut), jMax, column);
+            }
+            pivots++;
+            if (Events.SINK != null) {
+                Events.SINK.pivot(simplexPhase, jMax, jOut, theta);
             }
 
-            output.println_simplex("nIABV   " + numInABVs);
+            if (debugEnabled) {
+                output.println_simplex("nIABV   " + numInABVs);
+            }
 
-            if (simplexPhase == SimplexPhase.PHASE_0 && jOut >= inputVars.getNumVariables()) {
+            if (simplexPhase == SimplexPhase.PHASE_0 && jOut >= work.getNumVariables()) {
                 // Artificial basis variable went out
                 numInABVs--;
                 if (numInABVs == 0) {
@@ -352,85 +524,20 @@ public class Simplex {
         return simplexPhaseResult;
     }
 
-    /**
-     * <S20> Update Ai (inverse if A(ALL,IN)) for new IN set.
-     */
-    private void updateAInverse(States variableStates,
-                                InputVariables inputVars,
-                                OptimizerVariables optimizerVars,
-                                int iOut,
-                                int jMax,
-                                Direction InDirection) {
-        double temp;
-        int i, k;
-
-        for (i = 0; i < inputVars.getNumConstraints(); i++) {
-            if (i != iOut) {
-                temp = adjRate[i] / adjRate[iOut];
-
-                for (k = 0; k < inputVars.getNumConstraints(); k++) {
-                    optimizerVars.Ai[i][k] -= optimizerVars.Ai[iOut][k] * temp;
-                }
-            }
-        }
-
-        if (InDirection == Direction.Higher) {
-            temp = -adjRate[iOut];
-        } else {
-            temp = adjRate[iOut];
-        }
-
-        for (k = 0; k < inputVars.getNumConstraints(); k++) {
-            optimizerVars.Ai[iOut][k] /= temp;
-        }
-
-        // <S21> Reorder rows of Ai to stay consistent with inVars.
-        reorderAiRows(inputVars, optimizerVars, iOut, variableStates.getInVarPosition(jMax));
-    }
-
-    /**
-     * Reorder the rows of Ai to stay consistent with Invars (ascending order).
-     * In C or C++ this is more efficiently handled by manipulating pointers to
-     * rows.
-     */
-    private void reorderAiRows(InputVariables inputVars, OptimizerVariables optimizerVars, int delRow, int addRow) {
-        int i, j;
-        double temp;
-
-        if (addRow > delRow) {
-            for (j = 0; j < inputVars.getNumConstraints(); j++) {
-                temp = optimizerVars.Ai[delRow][j];
-
-                for (i = delRow; i <= addRow - 1; i++) {
-                    optimizerVars.Ai[i][j] = optimizerVars.Ai[i + 1][j];
-                }
-                optimizerVars.Ai[addRow][j] = temp;
-            }
-        } else if (addRow < delRow) {
-            for (j = 0; j < inputVars.getNumConstraints(); j++) {
-                temp = optimizerVars.Ai[delRow][j];
-                for (i = delRow; i >= addRow + 1; i--) {
-                    optimizerVars.Ai[i][j] = optimizerVars.Ai[i - 1][j];
-                }
-                optimizerVars.Ai[addRow][j] = temp;
-            }
-        }
-    }
-
     /**
      * <S30> Alter mu's as required to ensure unique solution.
      */
-    private void alterMu(States variableStates, InputVariables inputVars) {
+    private void alterMu(States variableStates, Workspace work) {
         int j0, j;
 
         for (j0 = 0; j0 < variableStates.getOutVarCount(); j0++) {
             j = variableStates.getOutVar(j0);
             if (profit[j] > -0.000001) {
-                double mu = inputVars.getExpectedReturn(j);
+                double mu = work.getExpectedReturn(j);
                 if (variableStates.isLo(j)) {
-                    inputVars.setExpectedReturn(j, mu - 0.000001);
+                    work.setExpectedReturn(j, mu - 0.000001);
                 } else {
-                    inputVars.setExpectedReturn(j, mu + 0.000001);
+                    work.setExpectedReturn(j, mu + 0.000001);
                 }
             }
         }
@@ -439,14 +546,14 @@ public class Simplex {
     /**
      * Dump important variables states at each step for debugging purposes.
      */
-    private void dumpStates(States variableStates, InputVariables inputVars, OptimizerVariables optimizerVars) {
+    private void dumpStates(States variableStates, Workspace work, OptimizerVariables optimizerVars) {
         output.dumpDebugCount();
         variableStates.dump(output.simplexScreenOutputStream());
 
         // dumpVector(out, "adjRate ", adjRate);
         output.dumpVector("x       ", optimizerVars.portfolioWeights);
         output.dump("nIABV    ", numInABVs);
-        // out.println(variableStates); out.println(inputVars);
+        // out.println(variableStates); out.println(work);
         // out.println(optimizerVars);
     }
 }
@@ -0,0 +1,64 @@
+package com.weisser.quote.portfolio.cla;
+
+/**
+ * The IN/OUT partition of the first corner portfolio, i.e. the simplex basis that maximizes the
+ * expected return. It is recorded by {@link Optimizer#optimize()} and can seed the simplex of the
+ * next run of a similar problem through {@link Optimizer#optimize(SimplexWarmStart)}: phase 0 is
+ * skipped and phase 1 starts at this basis. Only the simplex is warm-started; the critical line
+ * algorithm traces all corner portfolios from the first one as in a cold start.
+ */
+public final class SimplexWarmStart {
+    private final int numVariables;
+    private final int numConstraints;
+
+    /**
+     * The m IN (basic) variables, ascending.
+     */
+    private final int[] inVars;
+
+    /**
+     * True for the OUT variables at their upper limit.
+     */
+    private final boolean[] atUpper;
+
+    /**
+     * Records the partition after the simplex.
+     */
+    SimplexWarmStart(States variableStates, int numVariables, int numConstraints) {
+        this.numVariables = numVariables;
+        this.numConstraints = numConstraints;
+        this.inVars = new int[variableStates.getInVarCount()];
+        this.atUpper = new boolean[numVariables];
+
+        for (int i = 0; i < inVars.length; i++) {
+            inVars[i] = variableStates.getInVar(i);
+        }
+        for (int j = 0; j < numVariables; j++) {
+            atUpper[j] = variableStates.isUp(j);
+        }
+    }
+
+    /**
+     * Returns true if the partition has the dimensions of the problem.
+     *
+     * @param problem The problem to solve.
+     * @return True if the warm start can be tried for the problem.
+     */
+    public boolean fits(Problem problem) {
+        return problem.getNumVariables() == numVariables
+                && problem.getNumConstraints() == numConstraints
+                && inVars.length == numConstraints;
+    }
+
+    int getInVarCount() {
+        return inVars.length;
+    }
+
+    int getInVar(int i) {
+        return inVars[i];
+    }
+
+    boolean isUp(int j) {
+        return atUpper[j];
+    }
+}
@@ -0,0 +1,51 @@
+package com.weisser.quote.portfolio.cla;
+
+/**
+ * Receives the events of the optimizer: each simplex pivot, each corner portfolio and each run.
+ * The implementation is found with {@link java.util.ServiceLoader} when the optimizer is first
+ * used, e.g. the Java Flight Recorder events of the module in the directory <tt>jfr</tt>. Without
+ * one the optimizer sends no events at all.
+ *
+ * The methods are called on the optimizer threads, so implementations must be thread-safe and
+ * should return quickly while nobody listens.
+ */
+public interface SolverEvents {
+
+    /**
+     * A pivot of the simplex.
+     *
+     * @param phase The phase.
+     * @param entering The variable coming IN.
+     * @param leaving The variable going OUT, entering if it only moved to its other limit.
+     * @param theta The step of the entering variable.
+     */
+    void pivot(SimplexPhase phase, int entering, int leaving, double theta);
+
+    /**
+     * An iteration of the critical line algorithm.
+     *
+     * @param clacount The number of the corner portfolio.
+     * @param lambdaE lambda-E of the corner portfolio.
+     * @param variable The variable added or deleted in <C10>, -1 in the first iteration.
+     * @param added True if the variable came IN.
+     * @param direction The direction of the variable, null in the first iteration.
+     * @param numIn The number of IN variables.
+     */
+    void corner(int clacount, double lambdaE, int variable, boolean added, Direction direction, int numIn);
+
+    /**
+     * The start of a run.
+     *
+     * @return A handle passed to {@link #endSolve}, may be null.
+     */
+    Object beginSolve();
+
+    /**
+     * The end of a run, also if the simplex found no starting portfolio.
+     *
+     * @param solve The handle returned by {@link #beginSolve()}.
+     * @param problem The problem.
+     * @param frontier The result.
+     */
+    void endSolve(Object solve, Problem problem, EfficientFrontier frontier);
+}
@@ -0,0 +1,225 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Counters and timings of one run of {@link Optimizer#optimize()}: the pivots of both simplex
+ * phases, the iterations of the critical line algorithm with the size of the IN set after each
+ * of them, the time spent in each step and the bytes allocated. Instances are immutable.
+ *
+ * Metrics are only recorded if {@link Optimizer#setMetricsEnabled(boolean)} is set or an
+ * {@link OptimizerListener} is registered; otherwise the solver does not read the clock at all.
+ */
+public final class SolverMetrics {
+
+    /**
+     * The timed steps of the critical line algorithm.
+     */
+    public enum Step {
+        /** <C1> .. <C6>, the initial Mi and bbar. */
+        SETUP,
+        /** <C11>, the search for the IN variable that goes OUT first. */
+        C11,
+        /** <C12>, the products with the OUT variables and the search for the one that comes IN first. */
+        C12,
+        /** <C10>, a variable comes IN. */
+        ADD,
+        /** <C10>, a variable goes OUT. */
+        DELETE,
+        /** <C14>, the weights, E and V of the corner portfolio. */
+        CORNER_PORTFOLIO
+    }
+
+    private final long[] simplexPivots;
+    private final long[] simplexNanos;
+    private final long[] stepCounts;
+    private final long[] stepNanos;
+    private final int[] inCounts;
+    private final long totalNanos;
+    private final long allocatedBytes;
+
+    private SolverMetrics(Recorder r, long totalNanos, long allocatedBytes) {
+        this.simplexPivots = r.simplexPivots.clone();
+        this.simplexNanos = r.simplexNanos.clone();
+        this.stepCounts = r.stepCounts.clone();
+        this.stepNanos = r.stepNanos.clone();
+        this.inCounts = Arrays.copyOf(r.inCounts, r.iterations);
+        this.totalNanos = totalNanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * Returns the number of pivots of a simplex phase. A warm start that fell back to a cold
+     * start counts the pivots of both attempts.
+     *
+     * @param phase PHASE_0 (feasibility) or PHASE_1 (maximum return).
+     * @return The number of pivots.
+     */
+    public long getSimplexPivots(SimplexPhase phase) {
+        return simplexPivots[phase.ordinal()];
+    }
+
+    /**
+     * Returns the time spent in a simplex phase.
+     *
+     * @param phase PHASE_0 (feasibility) or PHASE_1 (maximum return).
+     * @return The time in nanoseconds.
+     */
+    public long getSimplexNanos(SimplexPhase phase) {
+        return simplexNanos[phase.ordinal()];
+    }
+
+    /**
+     * Returns the number of iterations of the critical line algorithm, i.e. the number of corner
+     * portfolios.
+     *
+     * @return The number of iterations.
+     */
+    public int getIterations() {
+        return inCounts.length;
+    }
+
+    /**
+     * Returns the number of variables that came IN.
+     *
+     * @return The number of {@link Step#ADD} steps.
+     */
+    public long getAdds() {
+        return stepCounts[Step.ADD.ordinal()];
+    }
+
+    /**
+     * Returns the number of variables that went OUT.
+     *
+     * @return The number of {@link Step#DELETE} steps.
+     */
+    public long getDeletes() {
+        return stepCounts[Step.DELETE.ordinal()];
+    }
+
+    /**
+     * Returns the size of the IN set after each iteration, including the lambda variables of the
+     * constraints.
+     *
+     * @return |IN| of corner portfolio 1, 2, ..., a copy.
+     */
+    public int[] getInCounts() {
+        return inCounts.clone();
+    }
+
+    /**
+     * Returns the time spent in a step of the critical line algorithm, summed over all
+     * iterations.
+     *
+     * @param step The step.
+     * @return The time in nanoseconds.
+     */
+    public long getNanos(Step step) {
+        return stepNanos[step.ordinal()];
+    }
+
+    /**
+     * Returns the wall clock time of the whole run, including the outputs.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Returns the bytes allocated by the thread that ran the optimizer. Allocations of the
+     * threads of a parallel pool are not included.
+     *
+     * @return The bytes, or -1 if the JVM does not measure them.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("total ").append(millis(totalNanos)).append(" ms");
+        for (SimplexPhase phase : SimplexPhase.values()) {
+            sb.append(", ").append(phase).append(' ').append(getSimplexPivots(phase)).append(" pivots ")
+                    .append(millis(getSimplexNanos(phase))).append(" ms");
+        }
+        sb.append(", ").append(getIterations()).append(" iterations (").append(getAdds()).append(" adds, ")
+                .append(getDeletes()).append(" deletes)");
+        for (Step step : Step.values()) {
+            sb.append(", ").append(step).append(' ').append(millis(getNanos(step))).append(" ms");
+        }
+        if (allocatedBytes >= 0) {
+            sb.append(", ").append(allocatedBytes).append(" bytes allocated");
+        }
+        return sb.toString();
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1e4) / 100.0;
+    }
+
+    /**
+     * Collects the metrics of one run. It is kept in the {@link Workspace}, which is null-checked
+     * by the solver before each reading of the clock.
+     */
+    static final class Recorder {
+        private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+        private final long start = System.nanoTime();
+        private final long allocatedAtStart = allocatedBytes();
+        private final long[] simplexPivots = new long[SimplexPhase.values().length];
+        private final long[] simplexNanos = new long[SimplexPhase.values().length];
+        private final long[] stepCounts = new long[Step.values().length];
+        private final long[] stepNanos = new long[Step.values().length];
+        private int[] inCounts = new int[16];
+        private int iterations;
+
+        void simplexPhase(SimplexPhase phase, int pivots, long nanos) {
+            simplexPivots[phase.ordinal()] += pivots;
+            simplexNanos[phase.ordinal()] += nanos;
+        }
+
+        void step(Step step, long nanos) {
+            stepCounts[step.ordinal()]++;
+            stepNanos[step.ordinal()] += nanos;
+        }
+
+        void iteration(int inCount) {
+            if (iterations == inCounts.length) {
+                inCounts = Arrays.copyOf(inCounts, 2 * iterations);
+            }
+            inCounts[iterations++] = inCount;
+        }
+
+        /**
+         * Ends the run.
+         */
+        SolverMetrics finish() {
+            long total = System.nanoTime() - start;
+            long allocated = allocatedAtStart >= 0 ? allocatedBytes() - allocatedAtStart : -1;
+            return new SolverMetrics(this, total, allocated);
+        }
+
+        private static long allocatedBytes() {
+            return THREADS != null ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+        }
+
+        private static com.sun.management.ThreadMXBean threadBean() {
+            try {
+                java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+                if (bean instanceof com.sun.management.ThreadMXBean) {
+                    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+                    if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                        return threads;
+                    }
+                }
+            } catch (LinkageError | SecurityException e) {
+                // No com.sun.management: the allocated bytes are not measured.
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.util.Arrays;
+
+/**
+ * A sparse matrix in compressed sparse row (CSR) form: the non-zeros of row i are
+ * values[rowStart[i]] .. values[rowStart[i + 1] - 1], in columns columns[rowStart[i]] ..
+ * columns[rowStart[i + 1] - 1] in ascending order.
+ *
+ * Used for the constraint matrix, where a group, issuer or country constraint touches only a few
+ * securities. Memory and the constraint loops of the simplex and the critical line algorithm
+ * scale with the number of non-zeros. Instances are immutable.
+ */
+public final class SparseMatrix {
+    private final int numRows;
+    private final int numColumns;
+    private final int[] rowStart;
+    private final int[] columns;
+    private final double[] values;
+
+    /**
+     * Creates a matrix from its CSR arrays. The arrays are copied.
+     *
+     * @param numRows Number of rows.
+     * @param numColumns Number of columns.
+     * @param rowStart numRows + 1 offsets into columns and values, starting with 0.
+     * @param columns Column of each non-zero, ascending within a row.
+     * @param values Value of each non-zero.
+     */
+    public SparseMatrix(int numRows, int numColumns, int[] rowStart, int[] columns, double[] values) {
+        if (rowStart.length != numRows + 1 || rowStart[0] != 0) {
+            throw new IllegalArgumentException("SparseMatrix: rowStart must have numRows + 1 (" + (numRows + 1)
+                    + ") elements starting with 0");
+        }
+        int nnz = rowStart[numRows];
+        if (columns.length < nnz || values.length < nnz) {
+            throw new IllegalArgumentException("SparseMatrix: rowStart[numRows] (" + nnz + ") and columns.length ("
+                    + columns.length + ") or values.length (" + values.length + ") mismatch");
+        }
+        for (int i = 0; i < numRows; i++) {
+            if (rowStart[i + 1] < rowStart[i]) {
+                throw new IllegalArgumentException("SparseMatrix: rowStart decreases at row " + i);
+            }
+            for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+                if (columns[k] < 0 || columns[k] >= numColumns || (k > rowStart[i] && columns[k] <= columns[k - 1])) {
+                    throw new IllegalArgumentException("SparseMatrix: columns of row " + i
+                            + " must be ascending and within 0.." + (numColumns - 1));
+                }
+            }
+        }
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+        this.rowStart = rowStart.clone();
+        this.columns = Arrays.copyOf(columns, nnz);
+        this.values = Arrays.copyOf(values, nnz);
+    }
+
+    /**
+     * Takes the arrays without copying or checking them, for matrices built in this package.
+     */
+    SparseMatrix(int[] rowStart, int[] columns, double[] values, int numRows, int numColumns) {
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+        this.rowStart = rowStart;
+        this.columns = columns;
+        this.values = values;
+    }
+
+    /**
+     * Creates a matrix from the non-zeros of the first numColumns columns of a dense matrix.
+     *
+     * @param a The dense matrix, one array per row.
+     * @param numColumns The number of columns to read.
+     * @return The sparse matrix.
+     */
+    public static SparseMatrix fromDense(double[][] a, int numColumns) {
+        int numRows = a.length;
+        int[] rowStart = new int[numRows + 1];
+        int nnz = 0;
+
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < numColumns; j++) {
+                if (a[i][j] != 0) {
+                    nnz++;
+                }
+            }
+            rowStart[i + 1] = nnz;
+        }
+
+        int[] columns = new int[nnz];
+        double[] values = new double[nnz];
+        int k = 0;
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < numColumns; j++) {
+                if (a[i][j] != 0) {
+                    columns[k] = j;
+                    values[k] = a[i][j];
+                    k++;
+                }
+            }
+        }
+        return new SparseMatrix(rowStart, columns, values, numRows, numColumns);
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    /**
+     * @return The number of stored non-zeros.
+     */
+    public int getNumNonZeros() {
+        return rowStart[numRows];
+    }
+
+    /**
+     * Returns an element, by binary search in row i.
+     *
+     * @param i The row.
+     * @param j The column.
+     * @return The element (i, j).
+     */
+    public double get(int i, int j) {
+        int k = Arrays.binarySearch(columns, rowStart[i], rowStart[i + 1], j);
+        return k >= 0 ? values[k] : 0.0;
+    }
+
+    /**
+     * Returns the transpose, i.e. the matrix in compressed sparse column form. The rows of the
+     * transpose list their columns in ascending order.
+     *
+     * @return The transpose.
+     */
+    public SparseMatrix transpose() {
+        int nnz = getNumNonZeros();
+        int[] tStart = new int[numColumns + 1];
+        int[] tColumns = new int[nnz];
+        double[] tValues = new double[nnz];
+        int i, k;
+
+        for (k = 0; k < nnz; k++) {
+            tStart[columns[k] + 1]++;
+        }
+        for (i = 0; i < numColumns; i++) {
+            tStart[i + 1] += tStart[i];
+        }
+        int[] next = Arrays.copyOf(tStart, numColumns);
+        for (i = 0; i < numRows; i++) {
+            for (k = rowStart[i]; k < rowStart[i + 1]; k++) {
+                int p = next[columns[k]]++;
+                tColumns[p] = i;
+                tValues[p] = values[k];
+            }
+        }
+        return new SparseMatrix(tStart, tColumns, tValues, numColumns, numRows);
+    }
+
+    /**
+     * Offsets of the rows into {@link #columns()} and {@link #values()}, for the kernels. Must
+     * not be modified.
+     */
+    int[] rowStart() {
+        return rowStart;
+    }
+
+    /**
+     * Columns of the non-zeros, for the kernels. Must not be modified.
+     */
+    int[] columns() {
+        return columns;
+    }
+
+    /**
+     * Values of the non-zeros, for the kernels. Must not be modified.
+     */
+    double[] values() {
+        return values;
+    }
+}
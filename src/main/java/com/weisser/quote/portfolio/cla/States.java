@@ -37,6 +37,14 @@ public class States {
         outVars.initialize(size);
     }
 
+    /**
+     * @param j Variable number.
+     * @return True if variable j is In.
+     */
+    public boolean isIn(int j) {
+        return state[j] == State.STATE_IN;
+    }
+
     /**
      * @param j Variable number.
      * @return True if variable j is Out at upper limit.
@@ -70,11 +78,11 @@ public class States {
      * @param jOut The variable to move to "out" set.
      * @param outDirection The out direction, can be one of Markowitz.HIGHER or
      */
-    public void goOut(int jOut, Direction outDirection, InputVariables inputVars) {
+    public void goOut(int jOut, Direction outDirection, Workspace work) {
         inVars.delete(jOut);    // Delete from IN set
         // Add to OUT set if security or slack variable (not ABV).
 
-        if (jOut <= inputVars.getNumSecurities() + inputVars.getNumSlackVars() - 1) {
+        if (jOut <= work.getNumSecurities() + work.getNumSlackVars() - 1) {
             outVars.add(jOut);
         }
         if (outDirection == Direction.Higher) {
@@ -120,6 +128,26 @@ public class States {
         return outVars.position(member);
     }
 
+    /**
+     * Returns the members of the "in" set in sorted order, valid up to {@link #getInVarCount()}.
+     * See {@link CSet#members()}.
+     *
+     * @return the members of the "in" set.
+     */
+    public int[] getInVars() {
+        return inVars.members();
+    }
+
+    /**
+     * Returns the members of the "out" set in sorted order, valid up to {@link #getOutVarCount()}.
+     * See {@link CSet#members()}.
+     *
+     * @return the members of the "out" set.
+     */
+    public int[] getOutVars() {
+        return outVars.members();
+    }
+
     public int getOutVar(int member) {
         return outVars.elementAt(member);
     }
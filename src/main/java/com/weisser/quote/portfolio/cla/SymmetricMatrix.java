@@ -0,0 +1,263 @@
+package com.weisser.quote.portfolio.cla;
+
+/**
+ * A symmetric matrix of which only the lower triangle is stored ("packed" storage).
+ *
+ * The rows of the lower triangle follow each other in one double[] array: row i holds the
+ * elements (i, 0) .. (i, i) and starts at index i * (i + 1) / 2. This is the same order in which
+ * {@link InputVariables#setCovariance(double[])} expects the covariance matrix. Element (i, j)
+ * with j &gt; i is element (j, i). Compared to a dense matrix this needs half of the memory, and
+ * symmetric updates only have to touch half of the elements.
+ *
+ * Walking along a full row j means walking along the packed row j up to the diagonal and then
+ * down column j, where the distance between (k, j) and (k + 1, j) is k + 1.
+ *
+ * The products and rank-1 updates of the leading block run on the selected {@link Kernels}.
+ */
+public final class SymmetricMatrix implements Covariance {
+
+    /**
+     * Largest size, the last one for which {@link #rowOffset(int)} of size is correct.
+     */
+    public static final int MAX_SIZE = 65535;
+
+    private final int size;
+    private final double[] data;
+
+    /**
+     * Creates a matrix filled with zeros.
+     *
+     * @param size Number of rows and columns, 0 .. {@link #MAX_SIZE}.
+     * @throws IllegalArgumentException If the size is out of range.
+     */
+    public SymmetricMatrix(int size) {
+        if (size < 0 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("size must be in 0 .. " + MAX_SIZE + ": " + size);
+        }
+        this.size = size;
+        this.data = new double[rowOffset(size)];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public double get(int i, int j) {
+        return data[index(i, j)];
+    }
+
+    /**
+     * Sets element (i, j) and with it element (j, i).
+     */
+    public void set(int i, int j, double value) {
+        data[index(i, j)] = value;
+    }
+
+    /**
+     * Adds to element (i, j) and with it to element (j, i).
+     */
+    public void add(int i, int j, double value) {
+        data[index(i, j)] += value;
+    }
+
+    /**
+     * Returns the backing array. Changes to the array change the matrix.
+     *
+     * @return The lower triangle, row by row.
+     */
+    public double[] data() {
+        return data;
+    }
+
+    /**
+     * Returns the index of element (i, 0) in {@link #data()}. The unsigned shift keeps the
+     * result correct as long as i * (i + 1) fits into 32 bits without sign.
+     *
+     * @param i The row.
+     * @return The index of the first element of row i.
+     */
+    public static int rowOffset(int i) {
+        return (i * (i + 1)) >>> 1;
+    }
+
+    /**
+     * Returns the index of element (i, j) in {@link #data()}.
+     *
+     * @param i The row.
+     * @param j The column.
+     * @return The index of element (i, j), which is also the index of element (j, i).
+     */
+    public static int index(int i, int j) {
+        return i >= j ? rowOffset(i) + j : rowOffset(j) + i;
+    }
+
+    /**
+     * Computes y = A * x for the leading n x n block. Every stored element is read once and used
+     * for both (i, j) and (j, i).
+     *
+     * @param n Size of the leading block.
+     * @param x The vector to multiply.
+     * @param y The result, overwritten.
+     */
+    public void multiply(int n, double[] x, double[] y) {
+        Kernels.get().symmetricMultiply(data, n, x, y);
+    }
+
+    /**
+     * Computes y1 = A * x1 and y2 = A * x2 for the leading n x n block in one pass over A.
+     *
+     * @param n Size of the leading block.
+     * @param x1 The first vector to multiply.
+     * @param y1 The first result, overwritten.
+     * @param x2 The second vector to multiply.
+     * @param y2 The second result, overwritten.
+     */
+    public void multiply(int n, double[] x1, double[] y1, double[] x2, double[] y2) {
+        Kernels.get().symmetricMultiply(data, n, x1, y1, x2, y2);
+    }
+
+    /**
+     * Computes rows from .. to - 1 of y1 = A * x1 and y2 = A * x2 for the leading n x n block.
+     * Each row is walked in full, so disjoint ranges may be computed concurrently; the result does
+     * not depend on how the rows are split.
+     *
+     * @param n Size of the leading block.
+     * @param from The first row.
+     * @param to The row after the last one.
+     * @param x1 The first vector to multiply.
+     * @param y1 The first result, rows from .. to - 1 are overwritten.
+     * @param x2 The second vector to multiply.
+     * @param y2 The second result, rows from .. to - 1 are overwritten.
+     */
+    public void multiplyRange(int n, int from, int to, double[] x1, double[] y1, double[] x2, double[] y2) {
+        for (int i = from; i < to; i++) {
+            double sum1 = 0;
+            double sum2 = 0;
+            // idx is the position of (i, k) in the packed array.
+            int idx = rowOffset(i);
+
+            for (int k = 0; k < n; k++) {
+                sum1 += data[idx] * x1[k];
+                sum2 += data[idx] * x2[k];
+                idx += (k < i) ? 1 : k + 1;
+            }
+            y1[i] = sum1;
+            y2[i] = sum2;
+        }
+    }
+
+    /**
+     * Symmetric rank-1 update A += x * x' / divisor of the leading n x n block. A negative divisor
+     * gives a downdate.
+     *
+     * @param n Size of the leading block.
+     * @param x The update vector.
+     * @param divisor The divisor.
+     */
+    public void rankOneUpdate(int n, double[] x, double divisor) {
+        Kernels.get().symmetricRankOneUpdate(data, n, x, divisor);
+    }
+
+    /**
+     * Copies column j of the leading n x n block into y.
+     *
+     * @param n Size of the leading block.
+     * @param j The column.
+     * @param y The result, overwritten.
+     */
+    public void column(int n, int j, double[] y) {
+        int row = rowOffset(j);
+        for (int i = 0; i <= j && i < n; i++) {
+            y[i] = data[row + i];
+        }
+        for (int i = j + 1; i < n; i++) {
+            y[i] = data[rowOffset(i) + j];
+        }
+    }
+
+    /**
+     * Overwrites row and column dst with row and column src, within the leading n x n block.
+     * Element (dst, src) is left as it is. Used to close the gap when a row and column are
+     * removed.
+     *
+     * @param n Size of the leading block.
+     * @param dst The row and column to overwrite.
+     * @param src The row and column to copy.
+     */
+    public void copyRowAndColumn(int n, int dst, int src) {
+        for (int k = 0; k < n; k++) {
+            if (k != dst && k != src) {
+                data[index(dst, k)] = data[index(src, k)];
+            }
+        }
+        data[index(dst, dst)] = data[index(src, src)];
+    }
+
+    /**
+     * Row products with the packed walk along each full row, see the class comment.
+     */
+    @Override
+    public void multiplyRows(int[] rows, int from, int to, double[] x1, double[] y1, double[] x2, double[] y2) {
+        for (int r = from; r < to; r++) {
+            int j = rows[r];
+            double sum1 = 0;
+            double sum2 = 0;
+            // idx is the position of (j, k) in the packed array.
+            int idx = rowOffset(j);
+
+            for (int k = 0; k < size; k++) {
+                sum1 += data[idx] * x1[k];
+                sum2 += data[idx] * x2[k];
+                idx += (k < j) ? 1 : k + 1;
+            }
+            y1[j] = sum1;
+            y2[j] = sum2;
+        }
+    }
+
+    /**
+     * Column products with the packed walk down each column: contiguous up to the diagonal, then
+     * with growing stride.
+     */
+    @Override
+    public void multiplyColumns(int[] cols, int from, int to, double[] x1, double[] y1, double[] x2, double[] y2) {
+        LinearAlgebraKernels kernels = Kernels.get();
+
+        for (int c = from; c < to; c++) {
+            int k = cols[c];
+            double x1k = x1[k];
+            double x2k = x2[k];
+            int idx = rowOffset(k);
+
+            kernels.axpy(x1k, data, idx, y1, 0, k);
+            kernels.axpy(x2k, data, idx, y2, 0, k);
+            // idx is the position of (i, k) in the packed array.
+            idx += k;
+            for (int i = k; i < size; i++) {
+                y1[i] += data[idx] * x1k;
+                y2[i] += data[idx] * x2k;
+                idx += i + 1;
+            }
+        }
+    }
+
+    @Override
+    public boolean isDense() {
+        return true;
+    }
+
+    @Override
+    public double quadraticForm(double[] x) {
+        LinearAlgebraKernels kernels = Kernels.get();
+        double sum = 0;
+
+        for (int i = 0; i < size; i++) {
+            int idx = rowOffset(i);
+            double offDiagonal = kernels.dot(data, idx, x, 0, i);
+            sum += x[i] * (2 * offDiagonal + data[idx + i] * x[i]);
+        }
+        return sum;
+    }
+}
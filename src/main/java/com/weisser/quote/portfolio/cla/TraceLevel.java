@@ -0,0 +1,27 @@
+package com.weisser.quote.portfolio.cla;
+
+/**
+ * Levels of the debug output written through {@link Output}. Each level includes the levels
+ * before it.
+ */
+public enum TraceLevel {
+    /**
+     * No debug output at all.
+     */
+    OFF,
+
+    /**
+     * Once per simplex phase.
+     */
+    INFO,
+
+    /**
+     * Once per simplex pivot and once per corner portfolio.
+     */
+    DEBUG,
+
+    /**
+     * Inside the loops over the variables, including matrix and vector dumps.
+     */
+    TRACE
+}
@@ -50,4 +50,13 @@ public final class Utility {
         }
         return newMatrix;
     }
+
+    public static SymmetricMatrix redim(SymmetricMatrix oldMatrix, int newSize) {
+        SymmetricMatrix newMatrix = new SymmetricMatrix(newSize);
+
+        int minSize = Math.min(oldMatrix.size(), newSize);
+        System.arraycopy(oldMatrix.data(), 0, newMatrix.data(), 0, SymmetricMatrix.rowOffset(minSize));
+
+        return newMatrix;
+    }
 }
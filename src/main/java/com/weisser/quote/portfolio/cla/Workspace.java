@@ -0,0 +1,231 @@
+package com.weisser.quote.portfolio.cla;
+
+import java.util.Arrays;
+
+/**
+ * Everything that changes while a {@link Problem} is solved: the variable states, the optimizer
+ * variables, the simplex and critical line algorithm with their vectors, and the few problem
+ * values that the algorithm alters (limits, expected returns and the artificial basis
+ * variables). A workspace is used for one run only, so runs never share mutable state.
+ *
+ * The M matrix of the critical line algorithm,
+ * <pre>
+ *     | C  A' |
+ *     | A  0  |
+ * </pre>
+ * is not stored; {@link #getM(int, int)} reads it from the covariance and the constraints of the
+ * problem.
+ */
+public final class Workspace {
+    private final Problem problem;
+
+    /**
+     * Number of variables. In a degenerate problem the ABVs are added (Simplex <S5>).
+     */
+    private int numVariables;
+
+    private final int numConstraints;
+
+    /**
+     * Expected returns, altered by the simplex to ensure a unique solution.
+     */
+    private double[] mu;
+
+    /**
+     * Lower and upper limits. Size: n+m elements, including the ABVs.
+     */
+    double[] lowerLimits, upperLimits;
+
+    /**
+     * Coefficient of ABV n+i in constraint i, set by the simplex.
+     */
+    private final double[] artificial;
+
+    final States variableStates;
+    final OptimizerVariables optimizerVars;
+    final Simplex simplex;
+    final CriticalLines criticalLines;
+
+    /**
+     * The metrics of the run, or null if they are not recorded.
+     */
+    SolverMetrics.Recorder metrics;
+
+    /**
+     * Creates the workspace for one run.
+     *
+     * @param problem The problem to solve.
+     * @param output The debug output.
+     */
+    Workspace(Problem problem, Output output) {
+        this.problem = problem;
+        this.numVariables = problem.getNumVariables();
+        this.numConstraints = problem.getNumConstraints();
+
+        int n = numVariables;
+        int m = numConstraints;
+
+        mu = new double[n];
+        lowerLimits = new double[n + m];
+        upperLimits = new double[n + m];
+        Arrays.fill(upperLimits, Optimizer.INFINITY);
+
+        for (int j = 0; j < n; j++) {
+            mu[j] = problem.getExpectedReturn(j);
+            lowerLimits[j] = problem.getLowerLimit(j);
+            upperLimits[j] = problem.getUpperLimit(j);
+        }
+        artificial = new double[m];
+
+        variableStates = new States(n + m);
+        optimizerVars = new OptimizerVariables(n, m);
+        simplex = new Simplex(n, m, output);
+        criticalLines = new CriticalLines();
+    }
+
+    public Problem getProblem() {
+        return problem;
+    }
+
+    public int getNumSecurities() {
+        return problem.getNumSecurities();
+    }
+
+    public int getNumSlackVars() {
+        return problem.getNumSlackVars();
+    }
+
+    /**
+     * Number of variables n = numSecurities + numSlackVars, plus the ABVs if the problem is
+     * degenerate.
+     *
+     * @return The number of variables.
+     */
+    public int getNumVariables() {
+        return numVariables;
+    }
+
+    public void setNumVariables(int n) {
+        this.numVariables = n;
+    }
+
+    public int getNumConstraints() {
+        return numConstraints;
+    }
+
+    public double getExpectedReturn(int j) {
+        return mu[j];
+    }
+
+    public void setExpectedReturn(int j, double r) {
+        mu[j] = r;
+    }
+
+    public void setExpectedReturnSize(int n) {
+        mu = Utility.redim(mu, n);
+    }
+
+    public double getConstraintRHS(int i) {
+        return problem.getConstraintRHS(i);
+    }
+
+    /**
+     * Returns a coefficient of the constraint matrix, including the ABV columns.
+     *
+     * @param i The constraint.
+     * @param j The variable, 0..n+m-1 with n from the problem.
+     * @return The coefficient of variable j in constraint i.
+     */
+    public double getConstraint(int i, int j) {
+        int n = problem.getNumVariables();
+
+        if (j < n) {
+            return problem.getConstraint(i, j);
+        }
+        return j == n + i ? artificial[i] : 0.0;
+    }
+
+    /**
+     * Writes column j of the constraint matrix, including the ABV columns, to
+     * column[offset] .. column[offset + m - 1].
+     *
+     * @param j The variable, 0..n+m-1 with n from the problem.
+     * @param column The destination.
+     * @param offset The index of the coefficient of constraint 0.
+     */
+    void getConstraintColumn(int j, double[] column, int offset) {
+        int n = problem.getNumVariables();
+
+        Arrays.fill(column, offset, offset + numConstraints, 0.0);
+        if (j < n) {
+            SparseMatrix a = problem.constraintColumns();
+            int[] start = a.rowStart();
+            int[] rows = a.columns();
+            double[] values = a.values();
+
+            for (int k = start[j]; k < start[j + 1]; k++) {
+                column[offset + rows[k]] = values[k];
+            }
+        } else {
+            column[offset + j - n] = artificial[j - n];
+        }
+    }
+
+    /**
+     * Sets the coefficient of ABV n+i in constraint i.
+     *
+     * @param i The constraint.
+     * @param value The coefficient, 1 or -1.
+     */
+    public void setArtificial(int i, double value) {
+        artificial[i] = value;
+    }
+
+    /**
+     * Returns an element of the M matrix. Rows and columns 0..n-1 belong to the variables,
+     * n..n+m-1 to the lambdas of the constraints.
+     *
+     * @param i The row.
+     * @param j The column.
+     * @return M(i, j).
+     */
+    public double getM(int i, int j) {
+        if (i < j) {
+            int t = i;
+            i = j;
+            j = t;
+        }
+        if (i < numVariables) {
+            return i < problem.getNumSecurities() ? problem.getCovariance(i, j) : 0.0;
+        }
+        if (j < numVariables) {
+            return getConstraint(i - numVariables, j);
+        }
+        return 0.0;
+    }
+
+    public double getEndLambdaE() {
+        return problem.getEndLambdaE();
+    }
+
+    public int getMaxCornerPortfolios() {
+        return problem.getMaxCornerPortfolios();
+    }
+
+    /**
+     * Returns the constraint matrix including the ABV columns, for debug output.
+     *
+     * @return A copy of the constraint matrix, m rows and n+m columns.
+     */
+    double[][] constraintsToArray() {
+        int n = problem.getNumVariables();
+        double[][] a = new double[numConstraints][n + numConstraints];
+
+        for (int i = 0; i < numConstraints; i++) {
+            for (int j = 0; j < n + numConstraints; j++) {
+                a[i][j] = getConstraint(i, j);
+            }
+        }
+        return a;
+    }
+}
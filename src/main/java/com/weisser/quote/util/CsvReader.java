@@ -0,0 +1,325 @@
+package com.weisser.quote.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads CSV (or TSV) files record by record, the counterpart of {@link CsvWriter}. Quoted
+ * fields may contain delimiters, line breaks and doubled quotes; empty lines are skipped.
+ *
+ * The fields of the current record are kept in reused arrays, and {@link #getDouble(int)}
+ * converts the usual decimal numbers (up to 15 digits, exponents up to 22) directly from the
+ * characters, exactly like {@link Double#parseDouble} but without creating a String.
+ */
+public class CsvReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Powers of 10 that are exact doubles.
+	 */
+	private static final double[] POW10 = new double[23];
+
+	static {
+		double p = 1;
+		for (int k = 0; k < POW10.length; k++) {
+			POW10[k] = p;
+			p *= 10;
+		}
+	}
+
+	private final Reader in;
+	private final char delimiter;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int position, limit;
+
+	/**
+	 * The characters of the fields of the current record, without quotes.
+	 */
+	private char[] chars = new char[256];
+	private int length;
+
+	/**
+	 * Start and end of each field in chars.
+	 */
+	private int[] fieldStart = new int[16], fieldEnd = new int[16];
+	private int numFields;
+
+	private long recordNumber;
+
+	/**
+	 * Creates a CSV reader.
+	 * @param in The source. It needs no buffering of its own.
+	 */
+	public CsvReader(Reader in) {
+		this(in, ',');
+	}
+
+	/**
+	 * Creates a reader with the given delimiter, e.g. '\t' for TSV.
+	 * @param in The source. It needs no buffering of its own.
+	 * @param delimiter The field delimiter.
+	 */
+	public CsvReader(Reader in, char delimiter) {
+		if (delimiter == '"' || delimiter == '\r' || delimiter == '\n') {
+			throw new IllegalArgumentException("invalid delimiter: " + (int) delimiter);
+		}
+		this.in = in;
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Reads the next record.
+	 * @return False at the end of the input.
+	 * @throws IOException If the source cannot be read.
+	 */
+	public boolean next() throws IOException {
+		boolean content;
+		do {
+			length = 0;
+			numFields = 0;
+			content = false;
+			int start = 0;
+			int c = read();
+
+			if (c < 0) {
+				return false;
+			}
+			for (; c >= 0; c = read()) {
+				if (c == '\n') {
+					break;
+				} else if (c == '\r') {
+					if (peek() == '\n') {
+						position++;
+					}
+					break;
+				}
+				content = true;
+				if (c == '"' && length == start) {
+					readQuoted();
+				} else if (c == delimiter) {
+					endField(start);
+					start = length;
+				} else {
+					append((char) c);
+				}
+			}
+			endField(start);
+		} while (!content);
+		recordNumber++;
+		return true;
+	}
+
+	/**
+	 * Returns the number of records read so far, i.e. the number of the current record counting
+	 * from 1.
+	 * @return The record number.
+	 */
+	public long getRecordNumber() {
+		return recordNumber;
+	}
+
+	/**
+	 * Returns the number of fields of the current record.
+	 * @return The number of fields.
+	 */
+	public int size() {
+		return numFields;
+	}
+
+	/**
+	 * Returns a field as text.
+	 * @param field The field, 0 .. size() - 1.
+	 * @return The text of the field.
+	 */
+	public String getString(int field) {
+		checkField(field);
+		return new String(chars, fieldStart[field], fieldEnd[field] - fieldStart[field]);
+	}
+
+	/**
+	 * Returns a field as a double. Blanks around the number are ignored.
+	 * @param field The field, 0 .. size() - 1.
+	 * @return The value.
+	 * @throws NumberFormatException If the field is not a number.
+	 */
+	public double getDouble(int field) {
+		checkField(field);
+		int p = fieldStart[field];
+		int end = fieldEnd[field];
+		while (p < end && chars[p] == ' ') {
+			p++;
+		}
+		while (end > p && chars[end - 1] == ' ') {
+			end--;
+		}
+
+		double value = parseSimple(p, end);
+		if (Double.isNaN(value)) {
+			String s = new String(chars, p, end - p);
+			try {
+				value = Double.parseDouble(s);
+			} catch (NumberFormatException e) {
+				throw new NumberFormatException("record " + recordNumber + ", field " + field + ": " + e.getMessage());
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Reads all remaining fields of the current record as doubles.
+	 * @param values The array to fill, at least size() - from elements.
+	 * @param from The first field.
+	 * @return The number of values read.
+	 */
+	public int getDoubles(double[] values, int from) {
+		for (int k = from; k < numFields; k++) {
+			values[k - from] = getDouble(k);
+		}
+		return numFields - from;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Converts [sign] digits [. digits] [e [sign] digits] with at most 15 significant digits and a
+	 * decimal exponent within -22 .. 22. Both the digits and the power of 10 are exact doubles
+	 * then, so one multiplication or division gives the correctly rounded result.
+	 * @return The value, or NaN if the field is not of this form.
+	 */
+	private double parseSimple(int p, int end) {
+		boolean negative = false;
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean any = false;
+
+		if (p < end && (chars[p] == '-' || chars[p] == '+')) {
+			negative = chars[p] == '-';
+			p++;
+		}
+		for (; p < end && chars[p] >= '0' && chars[p] <= '9'; p++) {
+			any = true;
+			if (mantissa != 0 || chars[p] != '0') {
+				mantissa = 10 * mantissa + (chars[p] - '0');
+				digits++;
+			}
+		}
+		if (p < end && chars[p] == '.') {
+			for (p++; p < end && chars[p] >= '0' && chars[p] <= '9'; p++) {
+				any = true;
+				if (mantissa != 0 || chars[p] != '0') {
+					mantissa = 10 * mantissa + (chars[p] - '0');
+					digits++;
+				}
+				exponent--;
+			}
+		}
+		if (!any || digits > 15) {
+			return Double.NaN;
+		}
+		if (p < end && (chars[p] == 'e' || chars[p] == 'E')) {
+			p++;
+			boolean negativeExponent = false;
+			if (p < end && (chars[p] == '-' || chars[p] == '+')) {
+				negativeExponent = chars[p] == '-';
+				p++;
+			}
+			int e = 0;
+			int start = p;
+			for (; p < end && chars[p] >= '0' && chars[p] <= '9' && e < 1000; p++) {
+				e = 10 * e + (chars[p] - '0');
+			}
+			if (p == start) {
+				return Double.NaN;
+			}
+			exponent += negativeExponent ? -e : e;
+		}
+		if (p != end) {
+			return Double.NaN;
+		}
+
+		double value;
+		if (mantissa == 0) {
+			value = 0;
+		} else if (exponent >= 0 && exponent < POW10.length) {
+			value = mantissa * POW10[exponent];
+		} else if (exponent < 0 && -exponent < POW10.length) {
+			value = mantissa / POW10[-exponent];
+		} else {
+			return Double.NaN;
+		}
+		return negative ? -value : value;
+	}
+
+	private void checkField(int field) {
+		if (field < 0 || field >= numFields) {
+			throw new IndexOutOfBoundsException("record " + recordNumber + " has " + numFields + " fields, no field " + field);
+		}
+	}
+
+	/**
+	 * Reads a quoted field after the opening quote, up to the closing quote.
+	 */
+	private void readQuoted() throws IOException {
+		while (true) {
+			int c = read();
+			if (c < 0) {
+				return;
+			}
+			if (c == '"') {
+				if (peek() != '"') {
+					return;
+				}
+				position++;
+			}
+			append((char) c);
+		}
+	}
+
+	private void endField(int start) {
+		if (numFields == fieldStart.length) {
+			fieldStart = Arrays.copyOf(fieldStart, 2 * numFields);
+			fieldEnd = Arrays.copyOf(fieldEnd, 2 * numFields);
+		}
+		fieldStart[numFields] = start;
+		fieldEnd[numFields] = length;
+		numFields++;
+	}
+
+	private void append(char c) {
+		if (length == chars.length) {
+			chars = Arrays.copyOf(chars, 2 * length);
+		}
+		chars[length++] = c;
+	}
+
+	private int read() throws IOException {
+		if (position == limit && !fill()) {
+			return -1;
+		}
+		return buffer[position++];
+	}
+
+	private int peek() throws IOException {
+		if (position == limit && !fill()) {
+			return -1;
+		}
+		return buffer[position];
+	}
+
+	private boolean fill() throws IOException {
+		int n = in.read(buffer, 0, buffer.length);
+		if (n <= 0) {
+			return false;
+		}
+		position = 0;
+		limit = n;
+		return true;
+	}
+}
@@ -0,0 +1,223 @@
+package com.weisser.quote.util;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes CSV (or TSV) files: one record per line, fields separated by the delimiter, fields
+ * containing the delimiter, quotes or line breaks enclosed in quotes (RFC 4180).
+ *
+ * The writer has its own character buffer and formats into a reused {@link StringBuilder}, so
+ * writing numbers does not allocate. Doubles are written with the shortest representation that
+ * reads back to the same value, or with a fixed number of decimals, see {@link #setDecimals}.
+ */
+public class CsvWriter implements Closeable, Flushable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Writer out;
+	private final char delimiter;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int position;
+
+	private final StringBuilder field = new StringBuilder(64);
+
+	/**
+	 * True before the first field of a record.
+	 */
+	private boolean startOfRecord = true;
+
+	/**
+	 * Decimals of the doubles, or -1 for the shortest exact representation.
+	 */
+	private int decimals = -1;
+
+	/**
+	 * Creates a CSV writer.
+	 * @param out The destination. It needs no buffering of its own.
+	 */
+	public CsvWriter(Writer out) {
+		this(out, ',');
+	}
+
+	/**
+	 * Creates a writer with the given delimiter, e.g. '\t' for TSV.
+	 * @param out The destination. It needs no buffering of its own.
+	 * @param delimiter The field delimiter.
+	 */
+	public CsvWriter(Writer out, char delimiter) {
+		if (delimiter == '"' || delimiter == '\r' || delimiter == '\n') {
+			throw new IllegalArgumentException("invalid delimiter: " + (int) delimiter);
+		}
+		this.out = out;
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Sets the number of decimals of the doubles written from now on.
+	 * @param decimals 0 .. {@link DecimalFormatter#MAX_DECIMALS}, or -1 for the shortest
+	 *        representation that reads back exactly (the default).
+	 */
+	public void setDecimals(int decimals) {
+		if (decimals < -1 || decimals > DecimalFormatter.MAX_DECIMALS) {
+			throw new IllegalArgumentException("decimals must be in -1 .. " + DecimalFormatter.MAX_DECIMALS + ": " + decimals);
+		}
+		this.decimals = decimals;
+	}
+
+	/**
+	 * Writes a numeric field.
+	 * @param value The value.
+	 * @return this.
+	 * @throws IOException If the destination cannot be written.
+	 */
+	public CsvWriter field(double value) throws IOException {
+		field.setLength(0);
+		if (decimals < 0) {
+			field.append(value);
+		} else {
+			DecimalFormatter.appendFixed(field, value, decimals);
+		}
+		return raw();
+	}
+
+	/**
+	 * Writes an integer field.
+	 * @param value The value.
+	 * @return this.
+	 * @throws IOException If the destination cannot be written.
+	 */
+	public CsvWriter field(long value) throws IOException {
+		field.setLength(0);
+		field.append(value);
+		return raw();
+	}
+
+	/**
+	 * Writes a text field, quoted if necessary.
+	 * @param value The text, null for an empty field.
+	 * @return this.
+	 * @throws IOException If the destination cannot be written.
+	 */
+	public CsvWriter field(CharSequence value) throws IOException {
+		field.setLength(0);
+		if (value != null) {
+			boolean quote = false;
+			for (int k = 0; k < value.length() && !quote; k++) {
+				char c = value.charAt(k);
+				quote = c == delimiter || c == '"' || c == '\r' || c == '\n';
+			}
+			if (quote) {
+				field.append('"');
+				for (int k = 0; k < value.length(); k++) {
+					char c = value.charAt(k);
+					if (c == '"') {
+						field.append('"');
+					}
+					field.append(c);
+				}
+				field.append('"');
+			} else {
+				field.append(value);
+			}
+		}
+		return raw();
+	}
+
+	/**
+	 * Ends the current record.
+	 * @return this.
+	 * @throws IOException If the destination cannot be written.
+	 */
+	public CsvWriter endRecord() throws IOException {
+		put('\n');
+		startOfRecord = true;
+		return this;
+	}
+
+	/**
+	 * Writes a record of doubles.
+	 * @param values The values.
+	 * @param from The first value.
+	 * @param to The value after the last one.
+	 * @return this.
+	 * @throws IOException If the destination cannot be written.
+	 */
+	public CsvWriter record(double[] values, int from, int to) throws IOException {
+		for (int k = from; k < to; k++) {
+			field(values[k]);
+		}
+		return endRecord();
+	}
+
+	/**
+	 * Writes a matrix, one record per row.
+	 * @param m The matrix.
+	 * @return this.
+	 * @throws IOException If the destination cannot be written.
+	 */
+	public CsvWriter matrix(double[][] m) throws IOException {
+		for (double[] row : m) {
+			record(row, 0, row.length);
+		}
+		return this;
+	}
+
+	/**
+	 * Writes the buffer to the destination and flushes it.
+	 */
+	@Override
+	public void flush() throws IOException {
+		drain();
+		out.flush();
+	}
+
+	/**
+	 * Writes the buffer and closes the destination.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			drain();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Appends the field formatted into {@link #field}.
+	 */
+	private CsvWriter raw() throws IOException {
+		if (!startOfRecord) {
+			put(delimiter);
+		}
+		startOfRecord = false;
+		int length = field.length();
+		if (position + length > buffer.length) {
+			drain();
+		}
+		if (length > buffer.length) {
+			out.append(field);
+		} else {
+			field.getChars(0, length, buffer, position);
+			position += length;
+		}
+		return this;
+	}
+
+	private void put(char c) throws IOException {
+		if (position == buffer.length) {
+			drain();
+		}
+		buffer[position++] = c;
+	}
+
+	private void drain() throws IOException {
+		if (position > 0) {
+			out.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+}
@@ -0,0 +1,241 @@
+package com.weisser.quote.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed point formatting of doubles into a {@link StringBuilder}, without allocating.
+ *
+ * Like {@link java.text.DecimalFormat} and {@link java.util.Formatter}, the digits are rounded
+ * from the shortest decimal representation of the value, the one of {@link Double#toString},
+ * and not from its exact binary value. Values far from a tie are rounded directly in double
+ * arithmetic, where all methods agree. Negative numbers that round to zero keep their sign
+ * ("-0.000") as with both of them.
+ */
+public final class DecimalFormatter {
+
+	/**
+	 * Largest number of decimals supported.
+	 */
+	public static final int MAX_DECIMALS = 15;
+
+	private static final double[] POW10 = new double[MAX_DECIMALS + 1];
+	private static final long[] LONG_POW10 = new long[19];
+
+	static {
+		long p = 1;
+		for (int k = 0; k < LONG_POW10.length; k++) {
+			LONG_POW10[k] = p;
+			if (k < POW10.length) {
+				POW10[k] = p;
+			}
+			p *= 10;
+		}
+	}
+
+	/**
+	 * Above this, the scaled value is no longer exact enough to round it as a double.
+	 */
+	private static final double MAX_SCALED = 1E15;
+
+	private DecimalFormatter() {
+	}
+
+	/**
+	 * Appends a value with a fixed number of decimals, like DecimalFormat("#0.000") for 3, i.e.
+	 * rounded half even. NaN and the infinities are appended as by
+	 * {@link StringBuilder#append(double)}.
+	 * @param sb The buffer.
+	 * @param value The value.
+	 * @param decimals The number of decimals, 0 .. {@link #MAX_DECIMALS}.
+	 * @return sb.
+	 */
+	public static StringBuilder appendFixed(StringBuilder sb, double value, int decimals) {
+		return appendFixed(sb, value, decimals, RoundingMode.HALF_EVEN);
+	}
+
+	/**
+	 * Appends a value with a fixed number of decimals.
+	 * @param sb The buffer.
+	 * @param value The value.
+	 * @param decimals The number of decimals, 0 .. {@link #MAX_DECIMALS}.
+	 * @param mode HALF_EVEN as DecimalFormat, or HALF_UP as String.format("%.3f"). A trailing 5
+	 *        of the shortest representation is a tie for HALF_EVEN only if it is exact; otherwise
+	 *        the exact value decides, as in DecimalFormat.
+	 * @return sb.
+	 */
+	public static StringBuilder appendFixed(StringBuilder sb, double value, int decimals, RoundingMode mode) {
+		if (decimals < 0 || decimals > MAX_DECIMALS) {
+			throw new IllegalArgumentException("decimals must be in 0 .. " + MAX_DECIMALS + ": " + decimals);
+		}
+		if (mode != RoundingMode.HALF_EVEN && mode != RoundingMode.HALF_UP) {
+			throw new IllegalArgumentException("mode must be HALF_EVEN or HALF_UP: " + mode);
+		}
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			return sb.append(value);
+		}
+		if (value < 0 || (value == 0 && 1 / value < 0)) {
+			sb.append('-');
+		}
+		double abs = Math.abs(value);
+		double scaled = abs * POW10[decimals];
+
+		if (scaled < MAX_SCALED && Math.abs(scaled - Math.floor(scaled) - 0.5) > 4 * Math.ulp(scaled)) {
+			return appendUnits(sb, (long) Math.rint(scaled), decimals);
+		}
+		return appendShortest(sb, abs, decimals, mode);
+	}
+
+	/**
+	 * Rounds the shortest representation of a value >= 0, which sb.append(double) writes without
+	 * allocating, and replaces it with the result.
+	 */
+	private static StringBuilder appendShortest(StringBuilder sb, double abs, int decimals, RoundingMode mode) {
+		int start = sb.length();
+		sb.append(abs);
+
+		// abs = digits * 10^exponent, with at most 17 significant digits.
+		long digits = 0;
+		int exponent = 0;
+		boolean fraction = false;
+		int k = start;
+		for (; k < sb.length(); k++) {
+			char c = sb.charAt(k);
+			if (c == '.') {
+				fraction = true;
+			} else if (c == 'E') {
+				break;
+			} else {
+				digits = 10 * digits + (c - '0');
+				if (fraction) {
+					exponent--;
+				}
+			}
+		}
+		if (k < sb.length()) {
+			boolean negative = sb.charAt(++k) == '-';
+			int e = 0;
+			for (k = negative ? k + 1 : k; k < sb.length(); k++) {
+				e = 10 * e + (sb.charAt(k) - '0');
+			}
+			exponent += negative ? -e : e;
+		}
+		while (digits != 0 && digits % 10 == 0) {
+			digits /= 10;
+			exponent++;
+		}
+		sb.setLength(start);
+
+		int shift = exponent + decimals;
+		if (shift >= 0) {
+			if (numDigits(digits) + shift <= 18) {
+				return appendUnits(sb, digits * LONG_POW10[shift], decimals);
+			}
+			sb.append(digits);
+			for (int z = 0; z < shift; z++) {
+				sb.append('0');
+			}
+			if (decimals > 0) {
+				sb.insert(sb.length() - decimals, '.');
+			}
+			return sb;
+		}
+
+		// Drop the last -shift digits.
+		int dropped = -shift;
+		long units = 0;
+		int first = 0;
+		boolean rest = false;
+		if (dropped <= numDigits(digits)) {
+			long p = LONG_POW10[dropped];
+			units = digits / p;
+			long remainder = digits % p;
+			first = (int) (remainder / LONG_POW10[dropped - 1]);
+			rest = remainder % LONG_POW10[dropped - 1] != 0;
+		}
+
+		boolean up;
+		if (first != 5 || rest || mode == RoundingMode.HALF_UP) {
+			up = first >= 5;
+		} else if (digits == 5 && abs < 1E-3) {
+			// DecimalFormat reads "5.0E-4" as the digits 5, 0 here and rounds 5.0E-4 to "0.000".
+			up = false;
+		} else {
+			int c = new BigDecimal(abs).compareTo(BigDecimal.valueOf(digits, -exponent));
+			up = c > 0 || (c == 0 && (units & 1) != 0);
+		}
+		return appendUnits(sb, up ? units + 1 : units, decimals);
+	}
+
+	private static int numDigits(long v) {
+		int n = 1;
+		while (n < LONG_POW10.length && v >= LONG_POW10[n]) {
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Appends units / 10^decimals.
+	 */
+	private static StringBuilder appendUnits(StringBuilder sb, long units, int decimals) {
+		long p = LONG_POW10[decimals];
+		sb.append(units / p);
+		if (decimals > 0) {
+			sb.append('.');
+			long fraction = units % p;
+			for (int k = decimals - 1; k > 0 && fraction < LONG_POW10[k]; k--) {
+				sb.append('0');
+			}
+			sb.append(fraction);
+		}
+		return sb;
+	}
+
+	/**
+	 * Appends a value with a fixed number of decimals, right-aligned in a field of the given
+	 * width, like String.format("%16.8f") for width 16 and 8 decimals, i.e. rounded half up.
+	 * @param sb The buffer.
+	 * @param value The value.
+	 * @param decimals The number of decimals, 0 .. {@link #MAX_DECIMALS}.
+	 * @param width The minimum number of characters, padded with spaces on the left.
+	 * @return sb.
+	 */
+	public static StringBuilder appendFixed(StringBuilder sb, double value, int decimals, int width) {
+		int start = sb.length();
+		appendFixed(sb, value, decimals, RoundingMode.HALF_UP);
+		padLeft(sb, start, width, ' ');
+		return sb;
+	}
+
+	/**
+	 * Appends an integer with at least the given number of digits, like DecimalFormat("#000")
+	 * for 3.
+	 * @param sb The buffer.
+	 * @param value The value.
+	 * @param minDigits The minimum number of digits, padded with zeros.
+	 * @return sb.
+	 */
+	public static StringBuilder appendInteger(StringBuilder sb, long value, int minDigits) {
+		if (value < 0) {
+			sb.append('-');
+			if (value == Long.MIN_VALUE) {
+				return sb.append(Long.toString(value).substring(1));
+			}
+			value = -value;
+		}
+		int start = sb.length();
+		sb.append(value);
+		padLeft(sb, start, minDigits, '0');
+		return sb;
+	}
+
+	/**
+	 * Pads sb from start on to width characters.
+	 */
+	private static void padLeft(StringBuilder sb, int start, int width, char c) {
+		for (int k = sb.length() - start; k < width; k++) {
+			sb.insert(start, c);
+		}
+	}
+}
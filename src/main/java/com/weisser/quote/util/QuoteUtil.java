@@ -3,7 +3,6 @@ package com.weisser.quote.util;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.io.PrintWriter;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 
@@ -59,6 +58,12 @@ public class QuoteUtil {
 			return d;
 		}
 		scale = Math.max(scale, 0);  // Verhindert negative scale-Werte
+		if (type == FormatType.fix && scale <= 9) {
+			double r = roundHalf(d, scale, mode);
+			if (!Double.isNaN(r)) {
+				return r;
+			}
+		}
 		BigDecimal bd = BigDecimal.valueOf(d);
 		if (type == FormatType.exp) {
 			BigDecimal bc = new BigDecimal(bd.unscaledValue(), bd.precision() - 1);
@@ -70,6 +75,27 @@ public class QuoteUtil {
 	public static double round(double d, int scale) {
 		return round(d, scale, RoundingMode.HALF_EVEN, QuoteUtil.FormatType.fix);
 	}
+
+	/**
+	 * Schneller Weg von {@link #round} ohne BigDecimal, für die HALF_* Rundungsarten: d * 10^scale
+	 * wird als double gerundet, wenn es klein genug ist und weit genug von x.5 entfernt liegt,
+	 * sodass BigDecimal dasselbe Ergebnis liefern würde.
+	 * @return Der gerundete Wert, oder NaN, wenn BigDecimal nötig ist.
+	 */
+	private static double roundHalf(double d, int scale, RoundingMode mode) {
+		if (mode != RoundingMode.HALF_EVEN && mode != RoundingMode.HALF_UP && mode != RoundingMode.HALF_DOWN) {
+			return Double.NaN;
+		}
+		double p = POW10[scale];
+		double scaled = Math.abs(d) * p;
+		if (!(scaled < 1E9) || Math.abs(scaled - Math.floor(scaled) - 0.5) < 1E-6) {
+			return Double.NaN;
+		}
+		double r = Math.rint(scaled) / p;
+		return d < 0 && r != 0 ? -r : r;
+	}
+
+	private static final double[] POW10 = {1E0, 1E1, 1E2, 1E3, 1E4, 1E5, 1E6, 1E7, 1E8, 1E9};
 	
 	/**
 	 * Round by division through the given factor.
@@ -141,22 +167,14 @@ public class QuoteUtil {
 	}
 
 	/**
-	 * Exports the given matrix into a CSV file.
+	 * Exports the given matrix into a CSV file, one record per row, with the values written
+	 * exactly (see {@link CsvWriter}).
 	 * @param m The matrix to print to a file.
 	 * @param filename
 	 */
 	public static void exportMatrixCSV(double[][] m, String filename) {
-		try {
-			PrintWriter out = new PrintWriter(new FileWriter(filename));
-
-			for (int i = 0; i < m.length; i++) {
-				out.print("[ ");
-				for (int j = 0; j < m[i].length; j++) {
-					out.print(m[i][j] + "     ");
-				}
-				out.println(" ]");
-			}
-			out.close();
+		try (CsvWriter out = new CsvWriter(new FileWriter(filename))) {
+			out.matrix(m);
 		} catch (IOException e){
 			System.err.println("Error: " + e.getMessage());
 		}
@@ -0,0 +1,150 @@
+package com.weisser.quote.portfolio.cla;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks FTRAN and BTRAN against the basis columns while pivots pile up eta vectors and force
+ * refactorisations.
+ */
+class BasisFactorizationTest {
+
+    private static final int NUM_SECURITIES = 30;
+
+    private static final int NUM_CONSTRAINTS = 8;
+
+    @Test
+    void solvesStayExactAcrossRefactorisations() {
+        Random random = new Random(5);
+        Workspace work = new Workspace(new Problem(denseConstraints(random)), new NullOutput());
+        int n = work.getProblem().getNumVariables();
+        int m = NUM_CONSTRAINTS;
+
+        // Start from the ABVs, like phase 0 of the simplex.
+        int[] vars = new int[m];
+        for (int i = 0; i < m; i++) {
+            work.setArtificial(i, random.nextBoolean() ? 1 : -1);
+            vars[i] = n + i;
+        }
+        BasisFactorization basis = new BasisFactorization(m, n + m);
+        assertTrue(basis.factorize(work, vars));
+        checkSolves(work, basis, random);
+
+        double[] column = new double[m];
+        for (int pivot = 1; pivot <= 3 * BasisFactorization.REFACTOR_INTERVAL + 7; pivot++) {
+            int j;
+            do {
+                j = random.nextInt(n);
+            } while (basis.position(j) >= 0);
+
+            work.getConstraintColumn(j, column, 0);
+            basis.ftran(column);
+
+            // A random position among those with a large pivot element, so the bases vary.
+            double max = 0;
+            for (int p = 0; p < m; p++) {
+                max = Math.max(max, Math.abs(column[p]));
+            }
+            int p;
+            do {
+                p = random.nextInt(m);
+            } while (Math.abs(column[p]) < 0.5 * max);
+
+            int leaving = basis.variable(p);
+            basis.replace(work, p, j, column);
+
+            assertEquals(j, basis.variable(p));
+            assertEquals(p, basis.position(j));
+            assertEquals(-1, basis.position(leaving));
+            checkSolves(work, basis, random);
+        }
+    }
+
+    /**
+     * Compares FTRAN and BTRAN with the dense basis and with a fresh factorisation of it.
+     */
+    private static void checkSolves(Workspace work, BasisFactorization basis, Random random) {
+        int m = NUM_CONSTRAINTS;
+        double[] b = new double[m * m];
+        int[] vars = new int[m];
+        for (int p = 0; p < m; p++) {
+            vars[p] = basis.variable(p);
+            work.getConstraintColumn(vars[p], b, p * m);
+        }
+        BasisFactorization fresh = new BasisFactorization(m, work.getProblem().getNumVariables() + m);
+        assertTrue(fresh.factorize(work, vars));
+
+        double[] a = new double[m];
+        double[] c = new double[m];
+        for (int i = 0; i < m; i++) {
+            a[i] = random.nextGaussian();
+            c[i] = random.nextGaussian();
+        }
+        double[] x = a.clone();
+        double[] y = c.clone();
+        double[] freshX = a.clone();
+        double[] freshY = c.clone();
+        basis.ftran(x);
+        basis.btran(y);
+        fresh.ftran(freshX);
+        fresh.btran(freshY);
+
+        for (int i = 0; i < m; i++) {
+            // B * x = a, row i; and B' * y = c, row i, which is column i of B times y.
+            double bx = 0;
+            double bty = 0;
+            for (int k = 0; k < m; k++) {
+                bx += b[k * m + i] * x[k];
+                bty += b[i * m + k] * y[k];
+            }
+            assertEquals(a[i], bx, 1E-9, "FTRAN residual in row " + i);
+            assertEquals(c[i], bty, 1E-9, "BTRAN residual in row " + i);
+            assertEquals(freshX[i], x[i], 1E-9 * Math.max(1, Math.abs(freshX[i])), "FTRAN position " + i);
+            assertEquals(freshY[i], y[i], 1E-9 * Math.max(1, Math.abs(freshY[i])), "BTRAN position " + i);
+        }
+    }
+
+    /**
+     * Inequality constraints with dense random coefficients, so the basis has slack columns
+     * next to dense ones.
+     */
+    private static InputVariables denseConstraints(Random random) {
+        int n = NUM_SECURITIES;
+        char[] conTypes = new char[NUM_CONSTRAINTS];
+        conTypes[0] = '=';
+        for (int i = 1; i < conTypes.length; i++) {
+            conTypes[i] = i % 2 == 0 ? '<' : '>';
+        }
+
+        InputVariables input = new InputVariables();
+        input.init(n, conTypes);
+
+        double[][] lhs = new double[conTypes.length][n];
+        double[] rhs = new double[conTypes.length];
+        for (int i = 0; i < conTypes.length; i++) {
+            for (int j = 0; j < n; j++) {
+                lhs[i][j] = i == 0 ? 1 : random.nextDouble() - 0.3;
+            }
+            rhs[i] = i == 0 ? 1 : 0.1;
+        }
+        input.setConstraints(lhs, rhs);
+
+        double[] upper = new double[n];
+        double[] mu = new double[n];
+        double[] packed = new double[n * (n + 1) / 2];
+        for (int j = 0; j < n; j++) {
+            upper[j] = 1;
+            mu[j] = random.nextDouble();
+            packed[j * (j + 1) / 2 + j] = 1;
+        }
+        input.setLowerBoundaries(new double[n]);
+        input.setUpperBoundaries(upper);
+        input.setExpectedReturns(mu);
+        input.setCovariance(packed);
+        return input;
+    }
+}
@@ -0,0 +1,217 @@
+package com.weisser.quote.portfolio.cla;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the blocked covariance and the shrinkage intensities with straightforward
+ * computations from the definitions in the papers.
+ */
+class CovarianceBuilderTest {
+
+    /**
+     * More securities than {@link CovarianceBuilder#BLOCK} and observations than
+     * {@link CovarianceBuilder#TIME_BLOCK}, so the tiles have partial edges.
+     */
+    private static final int NUM_SECURITIES = 150;
+
+    private static final int NUM_OBSERVATIONS = 300;
+
+    @Test
+    void sampleCovarianceMatchesReference() {
+        double[][] returns = factorReturns(new Random(6));
+        double[][] sample = centeredProducts(returns, NUM_OBSERVATIONS - 1);
+
+        for (ForkJoinPool pool : new ForkJoinPool[] {null, ForkJoinPool.commonPool()}) {
+            CovarianceBuilder builder = new CovarianceBuilder(returns);
+            builder.setParallelism(pool);
+            SymmetricMatrix result = new SymmetricMatrix(NUM_SECURITIES);
+            builder.build(result);
+
+            assertEquals(0, builder.getShrinkageIntensity());
+            assertMatrix(sample, result);
+        }
+    }
+
+    @Test
+    void ledoitWolfMatchesReference() {
+        double[][] returns = factorReturns(new Random(7));
+        int n = NUM_SECURITIES;
+        int numObs = NUM_OBSERVATIONS;
+        double[][] s = centeredProducts(returns, numObs);
+        double[][] z = centered(returns);
+
+        // Ledoit and Wolf (2004), lemmas 3.2 to 3.4, with the divisor T.
+        double mu = 0;
+        for (int i = 0; i < n; i++) {
+            mu += s[i][i] / n;
+        }
+        double d2 = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double e = s[i][j] - (i == j ? mu : 0);
+                d2 += e * e;
+            }
+        }
+        double b2 = 0;
+        for (double[] zt : z) {
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    double e = zt[i] * zt[j] - s[i][j];
+                    b2 += e * e;
+                }
+            }
+        }
+        b2 = Math.min(d2, b2 / ((double) numObs * numObs));
+        double delta = b2 / d2;
+
+        double[][] expected = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                expected[i][j] = (delta * (i == j ? mu : 0) + (1 - delta) * s[i][j]) * numObs / (numObs - 1);
+            }
+        }
+
+        CovarianceBuilder builder = new CovarianceBuilder(returns);
+        builder.setShrinkage(Shrinkage.LEDOIT_WOLF);
+        SymmetricMatrix result = new SymmetricMatrix(n);
+        builder.build(result);
+
+        assertTrue(delta > 0.01 && delta < 0.99, "delta: " + delta);
+        assertEquals(delta, builder.getShrinkageIntensity(), 1E-10);
+        assertMatrix(expected, result);
+    }
+
+    @Test
+    void constantCorrelationMatchesReference() {
+        double[][] returns = factorReturns(new Random(8));
+        int n = NUM_SECURITIES;
+        int numObs = NUM_OBSERVATIONS;
+        double[][] s = centeredProducts(returns, numObs);
+        double[][] z = centered(returns);
+
+        // Ledoit and Wolf (2003), appendix B, with the divisor T.
+        double[] sigma = new double[n];
+        for (int i = 0; i < n; i++) {
+            sigma[i] = Math.sqrt(s[i][i]);
+        }
+        double r = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i != j) {
+                    r += s[i][j] / (sigma[i] * sigma[j]) / ((double) n * (n - 1));
+                }
+            }
+        }
+        double[][] f = new double[n][n];
+        double gamma = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                f[i][j] = i == j ? s[i][i] : r * sigma[i] * sigma[j];
+                gamma += (f[i][j] - s[i][j]) * (f[i][j] - s[i][j]);
+            }
+        }
+        double pi = 0;
+        double rho = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double piIJ = 0;
+                double thetaIIJ = 0;
+                for (double[] zt : z) {
+                    double e = zt[i] * zt[j] - s[i][j];
+                    piIJ += e * e / numObs;
+                    thetaIIJ += (zt[i] * zt[i] - s[i][i]) * e / numObs;
+                }
+                pi += piIJ;
+                // The terms for (i, j) and (j, i) together give rho's sum over the pairs.
+                rho += i == j ? piIJ : r * sigma[j] / sigma[i] * thetaIIJ;
+            }
+        }
+        double delta = Math.max(0, Math.min(1, (pi - rho) / gamma / numObs));
+
+        double[][] expected = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                expected[i][j] = (delta * f[i][j] + (1 - delta) * s[i][j]) * numObs / (numObs - 1);
+            }
+        }
+
+        CovarianceBuilder builder = new CovarianceBuilder(returns);
+        builder.setShrinkage(Shrinkage.CONSTANT_CORRELATION);
+        SymmetricMatrix result = new SymmetricMatrix(n);
+        builder.build(result);
+
+        assertTrue(delta > 0.01 && delta < 0.99, "delta: " + delta);
+        assertEquals(delta, builder.getShrinkageIntensity(), 1E-10);
+        assertMatrix(expected, result);
+    }
+
+    private static void assertMatrix(double[][] expected, SymmetricMatrix actual) {
+        for (int i = 0; i < expected.length; i++) {
+            for (int j = 0; j <= i; j++) {
+                assertEquals(expected[i][j], actual.get(i, j), 1E-12 + 1E-10 * Math.abs(expected[i][j]), "(" + i + ", " + j + ")");
+            }
+        }
+    }
+
+    /**
+     * Returns of two factors plus noise that differs in size between the securities.
+     */
+    private static double[][] factorReturns(Random random) {
+        double[][] loadings = new double[NUM_SECURITIES][2];
+        double[] noise = new double[NUM_SECURITIES];
+        for (int i = 0; i < NUM_SECURITIES; i++) {
+            loadings[i][0] = 0.5 + random.nextDouble();
+            loadings[i][1] = random.nextGaussian();
+            noise[i] = 0.5 + 2 * random.nextDouble();
+        }
+        double[][] returns = new double[NUM_OBSERVATIONS][NUM_SECURITIES];
+        for (double[] r : returns) {
+            double market = random.nextGaussian();
+            double style = random.nextGaussian();
+            for (int i = 0; i < NUM_SECURITIES; i++) {
+                r[i] = 0.01 * (0.5 + loadings[i][0] * market + loadings[i][1] * style + noise[i] * random.nextGaussian());
+            }
+        }
+        return returns;
+    }
+
+    private static double[][] centered(double[][] returns) {
+        double[] mean = new double[NUM_SECURITIES];
+        for (double[] r : returns) {
+            for (int i = 0; i < NUM_SECURITIES; i++) {
+                mean[i] += r[i] / returns.length;
+            }
+        }
+        double[][] z = new double[returns.length][NUM_SECURITIES];
+        for (int t = 0; t < returns.length; t++) {
+            for (int i = 0; i < NUM_SECURITIES; i++) {
+                z[t][i] = returns[t][i] - mean[i];
+            }
+        }
+        return z;
+    }
+
+    /**
+     * Sums of the products of the centered returns over the observations, divided by divisor.
+     */
+    private static double[][] centeredProducts(double[][] returns, int divisor) {
+        double[][] z = centered(returns);
+        double[][] s = new double[NUM_SECURITIES][NUM_SECURITIES];
+        for (int i = 0; i < NUM_SECURITIES; i++) {
+            for (int j = 0; j < NUM_SECURITIES; j++) {
+                double sum = 0;
+                for (double[] zt : z) {
+                    sum += zt[i] * zt[j];
+                }
+                s[i][j] = sum / divisor;
+            }
+        }
+        return s;
+    }
+}
@@ -0,0 +1,131 @@
+package com.weisser.quote.portfolio.cla;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the incremental updates of alpha, beta and the covariance products against a run that
+ * computes them from scratch in every iteration.
+ */
+class CriticalLinesTest {
+
+    @Test
+    void incrementalUpdatesMatchFullRecompute() {
+        Problem problem = new Problem(factorModel(1000, 8, 7));
+
+        List<double[]> incremental = trace(problem, CriticalLines.FULL_RECOMPUTE_INTERVAL);
+        List<double[]> full = trace(problem, 0);
+
+        assertTrue(full.size() >= 1000, "corners: " + full.size());
+        assertEquals(full.size(), incremental.size());
+        for (int c = 0; c < full.size(); c++) {
+            double[] expected = full.get(c);
+            double[] actual = incremental.get(c);
+            for (int j = 0; j < expected.length; j++) {
+                assertEquals(expected[j], actual[j], 1E-9 * Math.max(1, Math.abs(expected[j])),
+                        "corner " + (c + 1) + ", entry " + j);
+            }
+        }
+    }
+
+    /**
+     * Runs the simplex and the critical line algorithm like {@link Optimizer#optimize()}.
+     *
+     * @return The weights of the securities followed by lambdaE, for each corner portfolio.
+     */
+    private static List<double[]> trace(Problem problem, int recomputeInterval) {
+        Workspace work = new Workspace(problem, new NullOutput());
+        assertEquals(SimplexPhaseResult.OK, work.simplex.run(work.variableStates, work, work.optimizerVars));
+
+        CriticalLines criticalLines = work.criticalLines;
+        criticalLines.recomputeInterval = recomputeInterval;
+        criticalLines.setParallelism(null, 0);
+        criticalLines.setup(work.variableStates, work, work.optimizerVars, new NullOutput());
+
+        int n = problem.getNumSecurities();
+        List<double[]> corners = new ArrayList<>();
+        for (int clacount = 1; clacount <= problem.getMaxCornerPortfolios(); clacount++) {
+            criticalLines.iteration(work.variableStates, work, work.optimizerVars, clacount);
+            double[] corner = new double[n + 1];
+            System.arraycopy(work.optimizerVars.portfolioWeights, 0, corner, 0, n);
+            corner[n] = work.optimizerVars.lambdaE;
+            corners.add(corner);
+
+            if (work.optimizerVars.lambdaE < problem.getEndLambdaE()) {
+                break;
+            }
+        }
+        return corners;
+    }
+
+    /**
+     * Budget constraint, group limits and a limit on every second security, with a covariance
+     * from three factors.
+     */
+    static InputVariables factorModel(int n, int groups, long seed) {
+        Random random = new Random(seed);
+        char[] conTypes = new char[groups + 2];
+        conTypes[0] = '=';
+        for (int g = 1; g <= groups; g++) {
+            conTypes[g] = '<';
+        }
+        conTypes[groups + 1] = '>';
+
+        InputVariables input = new InputVariables();
+        input.init(n, conTypes);
+        input.setMaxCornerPortfolios(100000);
+
+        double[][] lhs = new double[conTypes.length][n];
+        double[] rhs = new double[conTypes.length];
+        rhs[0] = 1;
+        for (int g = 1; g <= groups; g++) {
+            rhs[g] = 2.0 / groups;
+        }
+        rhs[groups + 1] = 0.3;
+        for (int j = 0; j < n; j++) {
+            lhs[0][j] = 1;
+            lhs[1 + j % groups][j] = 1;
+            lhs[groups + 1][j] = j % 2 == 0 ? 1 : 0;
+        }
+        input.setConstraints(lhs, rhs);
+
+        double[] lower = new double[n];
+        double[] upper = new double[n];
+        double[] mu = new double[n];
+        for (int j = 0; j < n; j++) {
+            upper[j] = Math.min(1.0, 4.0 / n);
+            mu[j] = 0.02 + 0.13 * random.nextDouble();
+        }
+        input.setLowerBoundaries(lower);
+        input.setUpperBoundaries(upper);
+        input.setExpectedReturns(mu);
+
+        double[][] b = new double[n][3];
+        double[] d = new double[n];
+        for (int j = 0; j < n; j++) {
+            for (int f = 0; f < 3; f++) {
+                b[j][f] = 0.3 * random.nextGaussian();
+            }
+            d[j] = 0.01 + 0.04 * random.nextDouble();
+        }
+        double[] packed = new double[n * (n + 1) / 2];
+        int p = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j <= i; j++) {
+                double sum = i == j ? d[i] : 0;
+                for (int f = 0; f < 3; f++) {
+                    sum += b[i][f] * b[j][f];
+                }
+                packed[p++] = sum;
+            }
+        }
+        input.setCovariance(packed);
+        return input;
+    }
+}
@@ -0,0 +1,56 @@
+package com.weisser.quote.portfolio.cla;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * A simplex warm start must give the same frontier as a cold start.
+ */
+class SimplexWarmStartTest {
+
+    @Test
+    void warmStartMatchesColdStart() {
+        InputVariables input = CriticalLinesTest.factorModel(120, 4, 9);
+        Optimizer yesterday = new Optimizer(input);
+        SimplexWarmStart warmStart = yesterday.optimize().getSimplexWarmStart();
+        assertNotNull(warmStart);
+
+        // Small changes of the expected returns, as from one day to the next.
+        Random random = new Random(10);
+        for (int j = 0; j < input.getNumSecurities(); j++) {
+            input.setExpectedReturn(j, input.getExpectedReturn(j) * (1 + 0.01 * random.nextGaussian()));
+        }
+        Optimizer today = new Optimizer(input);
+        today.setMetricsEnabled(true);
+        EfficientFrontier cold = today.optimize();
+        EfficientFrontier warm = today.optimize(warmStart);
+
+        assertTrue(cold.getMetrics().getSimplexPivots(SimplexPhase.PHASE_0) > 0);
+        assertEquals(0, warm.getMetrics().getSimplexPivots(SimplexPhase.PHASE_0));
+        assertFrontier(cold, warm);
+    }
+
+    @Test
+    void unfitWarmStartFallsBackToColdStart() {
+        SimplexWarmStart warmStart = new Optimizer(CriticalLinesTest.factorModel(30, 3, 11)).optimize().getSimplexWarmStart();
+        Optimizer optimizer = new Optimizer(CriticalLinesTest.factorModel(40, 3, 11));
+
+        assertFrontier(optimizer.optimize(), optimizer.optimize(warmStart));
+    }
+
+    private static void assertFrontier(EfficientFrontier expected, EfficientFrontier actual) {
+        assertEquals(SimplexPhaseResult.OK, actual.getSimplexResult());
+        assertEquals(expected.size(), actual.size());
+        for (int c = 0; c < expected.size(); c++) {
+            assertEquals(expected.getLambdaE(c), actual.getLambdaE(c), 1E-9 * Math.max(1, expected.getLambdaE(c)));
+            for (int j = 0; j < expected.getNumSecurities(); j++) {
+                assertEquals(expected.getWeight(c, j), actual.getWeight(c, j), 1E-9, "corner " + c + ", security " + j);
+            }
+        }
+    }
+}
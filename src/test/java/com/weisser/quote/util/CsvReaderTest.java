@@ -0,0 +1,127 @@
+package com.weisser.quote.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class CsvReaderTest {
+
+	@Test
+	void getDoubleMatchesParseDouble() throws IOException {
+		String[] numbers = {"0", "-0", "+0", "-0.0", "0.1", "-0.1", ".5", "5.", "+3", "1e22", "1E22", "1e-22", "1e23", "1e-23",
+				"123456789012345", "1234567890123456", "123456789012345678", "9007199254740993", "0.30000000000000004",
+				"2.2250738585072014E-308", "4.9E-324", "1.7976931348623157E308", "1e400", "-1e-400", "0.000000000000000000001",
+				"000123.4500", "1.5e+3", "1.5E-0", "NaN", "-Infinity", "0x1p3"};
+		for (String s : numbers) {
+			assertSame(Double.parseDouble(s), single(s), s);
+		}
+	}
+
+	@Test
+	void getDoubleMatchesParseDoubleOnRandomValues() throws IOException {
+		Random random = new Random(3);
+		StringBuilder text = new StringBuilder();
+		double[] values = new double[20000];
+		for (int k = 0; k < values.length; k++) {
+			switch (k % 4) {
+			case 0:
+				values[k] = Double.longBitsToDouble(random.nextLong());
+				break;
+			case 1:
+				values[k] = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(60) - 30);
+				break;
+			case 2:
+				values[k] = Math.round(random.nextDouble() * 1E6) / 1E3;
+				break;
+			default:
+				values[k] = random.nextGaussian();
+			}
+			if (Double.isNaN(values[k])) {
+				values[k] = 0;
+			}
+			text.append(values[k]).append(k % 10 == 9 ? '\n' : ',');
+		}
+
+		CsvReader in = new CsvReader(new StringReader(text.toString()));
+		int k = 0;
+		while (in.next()) {
+			for (int field = 0; field < in.size(); field++, k++) {
+				assertSame(Double.parseDouble(in.getString(field)), in.getDouble(field), in.getString(field));
+				assertSame(values[k], in.getDouble(field), in.getString(field));
+			}
+		}
+		assertEquals(values.length, k);
+	}
+
+	@Test
+	void ignoresBlanksAroundNumbers() throws IOException {
+		assertEquals(12.5, single(" 12.5 "));
+	}
+
+	@Test
+	void rejectsText() {
+		assertThrows(NumberFormatException.class, () -> single("abc"));
+		assertThrows(NumberFormatException.class, () -> single("1e"));
+		assertThrows(NumberFormatException.class, () -> single(""));
+	}
+
+	@Test
+	void readsCrLfAndSkipsEmptyLines() throws IOException {
+		CsvReader in = new CsvReader(new StringReader("a,b\r\n\r\n\nc,d\r\ne\n\n"));
+		assertRecord(in, "a", "b");
+		assertRecord(in, "c", "d");
+		assertRecord(in, "e");
+		assertFalse(in.next());
+		assertEquals(3, in.getRecordNumber());
+	}
+
+	@Test
+	void readsQuotedFields() throws IOException {
+		CsvReader in = new CsvReader(new StringReader("\"a,b\",\"say \"\"hi\"\"\",\"two\r\nlines\",,\"\"\nlast"));
+		assertRecord(in, "a,b", "say \"hi\"", "two\r\nlines", "", "");
+		assertRecord(in, "last");
+		assertFalse(in.next());
+	}
+
+	@Test
+	void readsTabs() throws IOException {
+		CsvReader in = new CsvReader(new StringReader("1\t2,5\t3"), '\t');
+		assertRecord(in, "1", "2,5", "3");
+		assertEquals(3.0, in.getDouble(2));
+	}
+
+	@Test
+	void checksFieldIndex() throws IOException {
+		CsvReader in = new CsvReader(new StringReader("1,2"));
+		assertTrue(in.next());
+		assertThrows(IndexOutOfBoundsException.class, () -> in.getDouble(2));
+	}
+
+	private static double single(String field) throws IOException {
+		CsvReader in = new CsvReader(new StringReader("\"" + field + "\""));
+		assertTrue(in.next());
+		return in.getDouble(0);
+	}
+
+	private static void assertRecord(CsvReader in, String... fields) throws IOException {
+		assertTrue(in.next());
+		assertEquals(fields.length, in.size());
+		for (int k = 0; k < fields.length; k++) {
+			assertEquals(fields[k], in.getString(k));
+		}
+	}
+
+	/**
+	 * Bitwise equality, which tells -0.0 from 0.0.
+	 */
+	private static void assertSame(double expected, double actual, String text) {
+		assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(actual), text);
+	}
+}
@@ -0,0 +1,119 @@
+package com.weisser.quote.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class CsvWriterTest {
+
+	@Test
+	void quotesOnlyWhereNeeded() throws IOException {
+		StringWriter text = new StringWriter();
+		CsvWriter out = new CsvWriter(text);
+		out.field("plain").field("a,b").field("say \"hi\"").field("two\r\nlines").field((CharSequence) null).field(7L).endRecord();
+		out.flush();
+		assertEquals("plain,\"a,b\",\"say \"\"hi\"\"\",\"two\r\nlines\",,7\n", text.toString());
+	}
+
+	@Test
+	void textRoundTrips() throws IOException {
+		String[][] records = {
+				{"a", "b,c", "\"quoted\"", ""},
+				{"line\nbreak", "cr\rlf\r\n", "\"", ",,"},
+				{"", "x"},
+				{"tab\there", " blanks "}};
+
+		for (char delimiter : new char[] {',', '\t', ';'}) {
+			StringWriter text = new StringWriter();
+			CsvWriter out = new CsvWriter(text, delimiter);
+			for (String[] record : records) {
+				for (String field : record) {
+					out.field(field);
+				}
+				out.endRecord();
+			}
+			out.close();
+
+			CsvReader in = new CsvReader(new StringReader(text.toString()), delimiter);
+			for (String[] record : records) {
+				assertTrue(in.next());
+				assertEquals(record.length, in.size(), "delimiter " + (int) delimiter);
+				for (int k = 0; k < record.length; k++) {
+					assertEquals(record[k], in.getString(k), "delimiter " + (int) delimiter);
+				}
+			}
+			assertFalse(in.next());
+		}
+	}
+
+	@Test
+	void exactDoublesRoundTrip() throws IOException {
+		Random random = new Random(4);
+		double[][] m = new double[300][40];
+		for (double[] row : m) {
+			for (int k = 0; k < row.length; k++) {
+				row[k] = k % 2 == 0 ? random.nextGaussian() * Math.pow(10, random.nextInt(40) - 20)
+						: Double.longBitsToDouble(random.nextLong());
+			}
+			row[0] = -0.0;
+		}
+
+		StringWriter text = new StringWriter();
+		CsvWriter out = new CsvWriter(text);
+		out.matrix(m);
+		out.flush();
+
+		CsvReader in = new CsvReader(new StringReader(text.toString()));
+		double[] row = new double[40];
+		for (double[] expected : m) {
+			assertTrue(in.next());
+			assertEquals(expected.length, in.getDoubles(row, 0));
+			for (int k = 0; k < row.length; k++) {
+				assertEquals(Double.doubleToLongBits(expected[k]), Double.doubleToLongBits(row[k]));
+			}
+		}
+		assertFalse(in.next());
+	}
+
+	@Test
+	void fixedDecimals() throws IOException {
+		StringWriter text = new StringWriter();
+		CsvWriter out = new CsvWriter(text);
+		out.setDecimals(3);
+		out.record(new double[] {1, 0.0005, -0.0004, 2.5e-3, 1234.56789}, 0, 5);
+		out.setDecimals(-1);
+		out.field(0.1).endRecord();
+		out.flush();
+		assertEquals("1.000,0.000,-0.000,0.003,1234.568\n0.1\n", text.toString());
+	}
+
+	@Test
+	void longFieldsBypassTheBuffer() throws IOException {
+		StringBuilder field = new StringBuilder();
+		for (int k = 0; k < 100000; k++) {
+			field.append((char) ('a' + k % 26));
+		}
+		StringWriter text = new StringWriter();
+		CsvWriter out = new CsvWriter(text);
+		out.field("x").field(field).endRecord();
+		out.flush();
+
+		CsvReader in = new CsvReader(new StringReader(text.toString()));
+		assertTrue(in.next());
+		assertEquals(field.toString(), in.getString(1));
+	}
+
+	@Test
+	void rejectsInvalidSettings() {
+		assertThrows(IllegalArgumentException.class, () -> new CsvWriter(new StringWriter(), '"'));
+		assertThrows(IllegalArgumentException.class, () -> new CsvWriter(new StringWriter()).setDecimals(-2));
+	}
+}
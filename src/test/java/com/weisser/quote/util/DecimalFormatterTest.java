@@ -0,0 +1,138 @@
+package com.weisser.quote.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares {@link DecimalFormatter} with DecimalFormat and String.format of the running JDK.
+ */
+class DecimalFormatterTest {
+
+	private static final int[] DECIMALS = {0, 3, 5, 8, 15};
+
+	private static final double[] MAGNITUDES = {1E-12, 1E-6, 1E-3, 1, 1E2, 1E4, 1E6, 1E8, 1E10, 1E11, 1E13, 1E16, 1E20, 1E300};
+
+	private static final double[] SPECIAL = {0.0, -0.0, -1E-10, 1E-10, 0.5, 1.5, 2.5, -2.5, 0.125, 0.0005, -0.0005, 5E-9, 4.35,
+			-603216.578273515, 1E7, 123456789.0, 1E15, 1E15 + 0.5, 9.999999999999999E14, 1.2345678901234567E17, 1E16, 1E20, 1E23,
+			1E300, Double.MIN_VALUE, Double.MAX_VALUE};
+
+	private static final DecimalFormat[] FORMATS = new DecimalFormat[DecimalFormatter.MAX_DECIMALS + 1];
+
+	static {
+		StringBuilder pattern = new StringBuilder("#0.");
+		FORMATS[0] = new DecimalFormat("#0", DecimalFormatSymbols.getInstance(Locale.ROOT));
+		for (int decimals = 1; decimals < FORMATS.length; decimals++) {
+			pattern.append('0');
+			FORMATS[decimals] = new DecimalFormat(pattern.toString(), DecimalFormatSymbols.getInstance(Locale.ROOT));
+		}
+	}
+
+	@Test
+	void specialValuesMatchDecimalFormatAndStringFormat() {
+		for (int decimals : DECIMALS) {
+			for (double v : SPECIAL) {
+				check(v, decimals);
+			}
+		}
+	}
+
+	@Test
+	void tiesMatchDecimalFormatAndStringFormat() {
+		Random random = new Random(1);
+		for (int decimals : DECIMALS) {
+			double scale = Math.pow(10, decimals);
+			for (double m : MAGNITUDES) {
+				for (int k = 0; k < 500; k++) {
+					double v = (Math.floor(random.nextDouble() * m * scale) + 0.5) / scale;
+					if (!Double.isInfinite(v)) {
+						check(random.nextBoolean() ? v : -v, decimals);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void randomValuesMatchDecimalFormatAndStringFormat() {
+		Random random = new Random(2);
+		for (int decimals : DECIMALS) {
+			for (double m : MAGNITUDES) {
+				for (int k = 0; k < 500; k++) {
+					double v = (random.nextDouble() - 0.5) * 2 * m;
+					// Also the neighbours of round decimal numbers.
+					if (k % 2 == 1) {
+						v = Double.parseDouble(String.format(Locale.ROOT, "%.6e", v));
+						v = Double.longBitsToDouble(Double.doubleToLongBits(v) + random.nextInt(9) - 4);
+					}
+					check(v, decimals);
+				}
+			}
+		}
+	}
+
+	@Test
+	void widthPadsLikeStringFormat() {
+		StringBuilder sb = new StringBuilder();
+		for (double v : SPECIAL) {
+			sb.setLength(0);
+			DecimalFormatter.appendFixed(sb, v, 8, 16);
+			assertEquals(String.format(Locale.ROOT, "%16.8f", v), sb.toString(), "value " + v);
+		}
+	}
+
+	@Test
+	void appendsAfterExistingText() {
+		StringBuilder sb = new StringBuilder("x=");
+		DecimalFormatter.appendFixed(sb, 2.5E-4, 3, 8);
+		assertEquals("x=   0.000", sb.toString());
+	}
+
+	@Test
+	void nanAndInfinityAsStringBuilder() {
+		StringBuilder sb = new StringBuilder();
+		DecimalFormatter.appendFixed(sb, Double.NaN, 3).append(' ');
+		DecimalFormatter.appendFixed(sb, Double.NEGATIVE_INFINITY, 3);
+		assertEquals("NaN -Infinity", sb.toString());
+	}
+
+	@Test
+	void integersMatchDecimalFormat() {
+		DecimalFormat format = new DecimalFormat("#000", DecimalFormatSymbols.getInstance(Locale.ROOT));
+		StringBuilder sb = new StringBuilder();
+		for (long v : new long[] {0, 7, -7, 42, 999, 1000, -123456, Long.MAX_VALUE, Long.MIN_VALUE}) {
+			sb.setLength(0);
+			DecimalFormatter.appendInteger(sb, v, 3);
+			assertEquals(format.format(v), sb.toString(), "value " + v);
+		}
+	}
+
+	@Test
+	void rejectsInvalidArguments() {
+		StringBuilder sb = new StringBuilder();
+		assertThrows(IllegalArgumentException.class, () -> DecimalFormatter.appendFixed(sb, 1, -1));
+		assertThrows(IllegalArgumentException.class, () -> DecimalFormatter.appendFixed(sb, 1, DecimalFormatter.MAX_DECIMALS + 1));
+		assertThrows(IllegalArgumentException.class, () -> DecimalFormatter.appendFixed(sb, 1, 3, RoundingMode.DOWN));
+	}
+
+	/**
+	 * HALF_EVEN must match DecimalFormat, HALF_UP String.format.
+	 */
+	private static void check(double v, int decimals) {
+		StringBuilder sb = new StringBuilder();
+		DecimalFormatter.appendFixed(sb, v, decimals);
+		assertEquals(FORMATS[decimals].format(v), sb.toString(), "HALF_EVEN " + v + " with " + decimals + " decimals");
+
+		sb.setLength(0);
+		DecimalFormatter.appendFixed(sb, v, decimals, RoundingMode.HALF_UP);
+		assertEquals(String.format(Locale.ROOT, "%." + decimals + "f", v), sb.toString(),
+				"HALF_UP " + v + " with " + decimals + " decimals");
+	}
+}
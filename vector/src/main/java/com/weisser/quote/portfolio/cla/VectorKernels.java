@@ -0,0 +1,143 @@
+package com.weisser.quote.portfolio.cla;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link LinearAlgebraKernels} on the Vector API, with the widest vectors the CPU supports (e.g.
+ * 8 doubles with AVX-512). The loops process whole vectors and finish the remaining elements one
+ * by one.
+ *
+ * Sums are accumulated per lane with fused multiply-adds and added up at the end, so the results
+ * differ from {@link ScalarKernels} in the last bits.
+ */
+public final class VectorKernels implements LinearAlgebraKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public String name() {
+        return "vector";
+    }
+
+    @Override
+    public double dot(double[] x, int xOffset, double[] y, int yOffset, int length) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(length);
+        int k = 0;
+
+        for (; k < bound; k += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOffset + k);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOffset + k);
+            acc = vx.fma(vy, acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; k < length; k++) {
+            sum += x[xOffset + k] * y[yOffset + k];
+        }
+        return sum;
+    }
+
+    @Override
+    public void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        DoubleVector va = DoubleVector.broadcast(SPECIES, a);
+        int bound = SPECIES.loopBound(length);
+        int k = 0;
+
+        for (; k < bound; k += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOffset + k);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOffset + k);
+            vx.fma(va, vy).intoArray(y, yOffset + k);
+        }
+        for (; k < length; k++) {
+            y[yOffset + k] += a * x[xOffset + k];
+        }
+    }
+
+    @Override
+    public double gatheredDot(double[] x, int[] index, double[] y, int length) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(length);
+        int k = 0;
+
+        for (; k < bound; k += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, k);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, 0, index, k);
+            acc = vx.fma(vy, acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; k < length; k++) {
+            sum += x[k] * y[index[k]];
+        }
+        return sum;
+    }
+
+    @Override
+    public void symmetricRankOneUpdate(double[] packed, int n, double[] x, double divisor) {
+        for (int i = 0; i < n; i++) {
+            axpy(x[i] / divisor, x, 0, packed, SymmetricMatrix.rowOffset(i), i + 1);
+        }
+    }
+
+    @Override
+    public void symmetricMultiply(double[] packed, int n, double[] x, double[] y) {
+        for (int i = 0; i < n; i++) {
+            int row = SymmetricMatrix.rowOffset(i);
+            double xi = x[i];
+            DoubleVector vxi = DoubleVector.broadcast(SPECIES, xi);
+            DoubleVector sum = DoubleVector.zero(SPECIES);
+            int bound = SPECIES.loopBound(i);
+            int j = 0;
+
+            // Row i up to the diagonal: (i, j) adds to y(i) and, as (j, i), to y(j).
+            for (; j < bound; j += SPECIES.length()) {
+                DoubleVector a = DoubleVector.fromArray(SPECIES, packed, row + j);
+                sum = a.fma(DoubleVector.fromArray(SPECIES, x, j), sum);
+                a.fma(vxi, DoubleVector.fromArray(SPECIES, y, j)).intoArray(y, j);
+            }
+            double s = sum.reduceLanes(VectorOperators.ADD);
+            for (; j < i; j++) {
+                double a = packed[row + j];
+                s += a * x[j];
+                y[j] += a * xi;
+            }
+            y[i] = s + packed[row + i] * xi;
+        }
+    }
+
+    @Override
+    public void symmetricMultiply(double[] packed, int n, double[] x1, double[] y1, double[] x2, double[] y2) {
+        for (int i = 0; i < n; i++) {
+            int row = SymmetricMatrix.rowOffset(i);
+            double x1i = x1[i];
+            double x2i = x2[i];
+            DoubleVector vx1i = DoubleVector.broadcast(SPECIES, x1i);
+            DoubleVector vx2i = DoubleVector.broadcast(SPECIES, x2i);
+            DoubleVector sum1 = DoubleVector.zero(SPECIES);
+            DoubleVector sum2 = DoubleVector.zero(SPECIES);
+            int bound = SPECIES.loopBound(i);
+            int j = 0;
+
+            for (; j < bound; j += SPECIES.length()) {
+                DoubleVector a = DoubleVector.fromArray(SPECIES, packed, row + j);
+                sum1 = a.fma(DoubleVector.fromArray(SPECIES, x1, j), sum1);
+                sum2 = a.fma(DoubleVector.fromArray(SPECIES, x2, j), sum2);
+                a.fma(vx1i, DoubleVector.fromArray(SPECIES, y1, j)).intoArray(y1, j);
+                a.fma(vx2i, DoubleVector.fromArray(SPECIES, y2, j)).intoArray(y2, j);
+            }
+            double s1 = sum1.reduceLanes(VectorOperators.ADD);
+            double s2 = sum2.reduceLanes(VectorOperators.ADD);
+            for (; j < i; j++) {
+                double a = packed[row + j];
+                s1 += a * x1[j];
+                s2 += a * x2[j];
+                y1[j] += a * x1i;
+                y2[j] += a * x2i;
+            }
+            double d = packed[row + i];
+            y1[i] = s1 + d * x1i;
+            y2[i] = s2 + d * x2i;
+        }
+    }
+}